@@ -0,0 +1,31 @@
+package com.luv2code.springmvc.config;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import javax.sql.DataSource;
+
+// Wraps the DataSource in a ConcurrencyLimitingDataSource when gradebook.datasource.max-concurrency is set
+@Configuration
+@ConditionalOnProperty("gradebook.datasource.max-concurrency")
+public class ConcurrencyLimitingConfiguration {
+
+    // static, post processors are created before the other beans of this class
+    @Bean
+    public static BeanPostProcessor concurrencyLimitingDataSourcePostProcessor(Environment environment) {
+        int maxConcurrency = environment.getRequiredProperty("gradebook.datasource.max-concurrency", Integer.class);
+        long timeoutMillis = environment.getProperty("gradebook.datasource.max-concurrency-wait-ms", Long.class, 30_000L);
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                // only the application's DataSource, not the primary and replica pools behind a routing one
+                if ("dataSource".equals(beanName) && bean instanceof DataSource && !(bean instanceof ConcurrencyLimitingDataSource))
+                    return new ConcurrencyLimitingDataSource((DataSource) bean, maxConcurrency, timeoutMillis);
+                return bean;
+            }
+        };
+    }
+}
@@ -0,0 +1,56 @@
+package com.luv2code.springmvc.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+
+/**
+ * Only active when gradebook.datasource.replica.url is set. The replica gets the primary's driver
+ * and, unless given its own, its credentials. Reads right after a write in another transaction
+ * can miss that write while the replica lags.
+ * <p>
+ * The primary pool takes spring.datasource.hikari.* as before, the replica pool its own
+ * gradebook.datasource.replica.hikari.*.
+ */
+@Configuration
+@ConditionalOnProperty("gradebook.datasource.replica.url")
+public class ReplicaDataSourceConfiguration {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean
+    @ConfigurationProperties("gradebook.datasource.replica.hikari")
+    public HikariDataSource replicaDataSource(DataSourceProperties properties,
+                                              @Value("${gradebook.datasource.replica.url}") String replicaUrl,
+                                              @Value("${gradebook.datasource.replica.username:${spring.datasource.username:}}") String replicaUsername,
+                                              @Value("${gradebook.datasource.replica.password:${spring.datasource.password:}}") String replicaPassword) {
+        return DataSourceBuilder.create()
+                .type(HikariDataSource.class)
+                .driverClassName(properties.determineDriverClassName())
+                .url(replicaUrl)
+                .username(replicaUsername)
+                .password(replicaPassword)
+                .build();
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("primaryDataSource") DataSource primary,
+                                 @Qualifier("replicaDataSource") DataSource replica) {
+        return new LazyConnectionDataSourceProxy(new ReplicaRoutingDataSource(primary, replica));
+    }
+}
@@ -0,0 +1,50 @@
+package com.luv2code.springmvc.config;
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import java.net.URI;
+import java.time.Duration;
+import java.util.OptionalLong;
+import java.util.UUID;
+
+/**
+ * Caffeine backed region for hibernate's second-level cache, bounded in size and time. Only
+ * grades are cached: deleteGrade looks them up by id. Students and grade lists are only ever
+ * read through queries, which never hit an entity region, and the student page has its own
+ * GradeAverageCache, so there is no query cache either.
+ */
+@Configuration
+public class SecondLevelCacheConfiguration {
+
+    public static final String GRADE_REGION = "grade";
+
+    @Bean(destroyMethod = "close")
+    public CacheManager hibernateCacheManager(@Value("${gradebook.cache.entities.ttl:10m}") Duration entityTtl,
+                                              @Value("${gradebook.cache.entities.max-size:10000}") long entityMaxSize) {
+        // a manager of its own, every application context (and test context) gets fresh regions
+        CacheManager cacheManager = Caching.getCachingProvider(CaffeineCachingProvider.class.getName())
+                .getCacheManager(URI.create("gradebook-" + UUID.randomUUID()), getClass().getClassLoader());
+        cacheManager.createCache(GRADE_REGION, bounded(entityTtl, entityMaxSize));
+        return cacheManager;
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer hibernateCacheManagerCustomizer(CacheManager hibernateCacheManager) {
+        return properties -> properties.put(ConfigSettings.CACHE_MANAGER, hibernateCacheManager);
+    }
+
+    private static CaffeineConfiguration<Object, Object> bounded(Duration ttl, long maxSize) {
+        CaffeineConfiguration<Object, Object> configuration = new CaffeineConfiguration<>();
+        configuration.setExpireAfterWrite(OptionalLong.of(ttl.toNanos()));
+        configuration.setMaximumSize(OptionalLong.of(maxSize));
+        return configuration;
+    }
+}
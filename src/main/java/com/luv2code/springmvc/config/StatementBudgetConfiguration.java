@@ -0,0 +1,27 @@
+package com.luv2code.springmvc.config;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+// Statements are only counted when budgets are checked, gradebook.statement-budget.mode log or fail
+@Configuration
+@ConditionalOnExpression("'${gradebook.statement-budget.mode:off}' != 'off'")
+public class StatementBudgetConfiguration {
+
+    // static, post processors are created before the other beans of this class
+    @Bean
+    public static BeanPostProcessor statementCountingDataSourcePostProcessor() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if ("dataSource".equals(beanName) && bean instanceof DataSource && !(bean instanceof StatementCountingDataSource))
+                    return new StatementCountingDataSource((DataSource) bean);
+                return bean;
+            }
+        };
+    }
+}
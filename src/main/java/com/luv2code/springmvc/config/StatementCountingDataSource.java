@@ -0,0 +1,74 @@
+package com.luv2code.springmvc.config;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Set;
+
+/**
+ * Records every statement prepared or executed on its connections into the StatementLog open on
+ * the calling thread, if any. Sitting under hibernate and JdbcTemplate alike, it sees the
+ * statistics and rank loads, imports and total repairs as well as the repositories.
+ */
+public class StatementCountingDataSource extends DelegatingDataSource {
+
+    private static final Set<String> PREPARING = Set.of("prepareStatement", "prepareCall");
+
+    private static final Set<String> EXECUTING = Set.of("execute", "executeQuery", "executeUpdate",
+            "executeLargeUpdate", "addBatch");
+
+    public StatementCountingDataSource(DataSource target) {
+        super(target);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return counting(super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return counting(super.getConnection(username, password));
+    }
+
+    private static Connection counting(Connection connection) {
+        return proxy(Connection.class, connection, (method, args) -> {
+            if (PREPARING.contains(method.getName()) && args != null && args[0] instanceof String)
+                StatementLog.recordCurrent((String) args[0]);
+        }, (method, result) -> method.getName().equals("createStatement") ? counting((Statement) result) : result);
+    }
+
+    // plain statements get their SQL when they execute it
+    private static Statement counting(Statement statement) {
+        return proxy(Statement.class, statement, (method, args) -> {
+            if (EXECUTING.contains(method.getName()) && args != null && args.length > 0 && args[0] instanceof String)
+                StatementLog.recordCurrent((String) args[0]);
+        }, (method, result) -> result);
+    }
+
+    private interface BeforeCall {
+        void accept(Method method, Object[] args);
+    }
+
+    private interface AfterCall {
+        Object apply(Method method, Object result);
+    }
+
+    private static <T> T proxy(Class<T> type, T target, BeforeCall before, AfterCall after) {
+        return type.cast(Proxy.newProxyInstance(StatementCountingDataSource.class.getClassLoader(), new Class<?>[] {type},
+                (proxy, method, args) -> {
+                    before.accept(method, args);
+                    try {
+                        return after.apply(method, method.invoke(target, args));
+                    } catch (InvocationTargetException e) {
+                        throw e.getTargetException();
+                    }
+                }));
+    }
+}
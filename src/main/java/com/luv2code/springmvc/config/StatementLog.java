@@ -0,0 +1,94 @@
+package com.luv2code.springmvc.config;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * The SQL statements prepared during one recording, counted by their text. Statements are
+ * recorded with their parameter placeholders, so a query run once per row of a loop shows up as
+ * one text with a high count.
+ * <p>
+ * A recording belongs to the thread that started it. Work handed to another thread on the
+ * request's behalf, such as a ReadFanOut read, records into it through recordInto.
+ */
+public class StatementLog {
+
+    private static final ThreadLocal<StatementLog> CURRENT = new ThreadLocal<>();
+
+    private final Map<String, Integer> counts = new LinkedHashMap<>();
+
+    private int count;
+
+    public static StatementLog start() {
+        StatementLog log = new StatementLog();
+        CURRENT.set(log);
+        return log;
+    }
+
+    public static StatementLog stop() {
+        StatementLog log = CURRENT.get();
+        CURRENT.remove();
+        return log;
+    }
+
+    // the recording open on this thread, or null
+    public static StatementLog current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Runs the work with its statements recorded into the given log, null for none, then goes back
+     * to whatever this thread was recording before.
+     */
+    public static <T> T recordInto(StatementLog log, Supplier<T> work) {
+        StatementLog previous = CURRENT.get();
+        set(log);
+        try {
+            return work.get();
+        } finally {
+            set(previous);
+        }
+    }
+
+    // records into the log open on this thread, if any
+    static void recordCurrent(String sql) {
+        StatementLog log = CURRENT.get();
+        if (log != null)
+            log.record(sql);
+    }
+
+    private static void set(StatementLog log) {
+        if (log == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(log);
+        }
+    }
+
+    synchronized void record(String sql) {
+        count++;
+        counts.merge(sql, 1, Integer::sum);
+    }
+
+    public synchronized int getCount() {
+        return count;
+    }
+
+    /**
+     * The statements run more than maxRepeats times, with how often they ran.
+     */
+    public synchronized Map<String, Integer> getRepeated(int maxRepeats) {
+        Map<String, Integer> repeated = new LinkedHashMap<>();
+        counts.forEach((sql, times) -> {
+            if (times > maxRepeats)
+                repeated.put(sql, times);
+        });
+        return repeated;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return count + " statements " + counts;
+    }
+}
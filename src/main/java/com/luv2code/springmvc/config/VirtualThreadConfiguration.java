@@ -0,0 +1,55 @@
+package com.luv2code.springmvc.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * gradebook.threads.mode=virtual runs each request, and so every blocking repository call it makes,
+ * on its own virtual thread instead of a thread of tomcat's pool. The build still targets Java 17,
+ * so the executor is looked up at runtime: on a JDK without virtual threads the mode logs a
+ * warning and tomcat keeps its platform threads. Pair it with gradebook.datasource.max-concurrency,
+ * nothing else bounds how many requests wait on the database at once.
+ * <p>
+ * Unverified: the tests and CI run on 17, where this mode is the fallback, and nothing here has
+ * measured it on 21. One known risk there: a virtual thread blocked inside a synchronized block
+ * pins its carrier thread, and MySQL Connector/J 8.0 does its socket I/O under synchronized. Each
+ * request waiting on MySQL would then hold one of the few carriers, leaving fewer requests in
+ * flight than with the platform pool. Before enabling it, run ThreadModeLoadRunner against MySQL
+ * on 21 with -Djdk.tracePinnedThreads=full.
+ */
+@Configuration
+@ConditionalOnProperty(name = "gradebook.threads.mode", havingValue = "virtual")
+public class VirtualThreadConfiguration {
+
+    private static final Logger log = LoggerFactory.getLogger(VirtualThreadConfiguration.class);
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadExecutorCustomizer() {
+        ExecutorService executor = newVirtualThreadPerTaskExecutor();
+        return protocolHandler -> {
+            if (executor != null)
+                protocolHandler.setExecutor(executor);
+        };
+    }
+
+    /**
+     * Executors.newVirtualThreadPerTaskExecutor() when the running JDK has it, otherwise null.
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // missing before Java 21, or a preview feature that is not enabled on 19 and 20
+            log.warn("Virtual threads are not available on Java {}, requests stay on platform threads",
+                    System.getProperty("java.version"));
+            return null;
+        }
+    }
+}
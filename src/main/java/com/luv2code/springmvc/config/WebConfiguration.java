@@ -0,0 +1,24 @@
+package com.luv2code.springmvc.config;
+
+import com.luv2code.springmvc.controller.GradebookMetricsInterceptor;
+import com.luv2code.springmvc.controller.StatementBudgetInterceptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+public class WebConfiguration implements WebMvcConfigurer {
+
+    @Autowired
+    private GradebookMetricsInterceptor gradebookMetricsInterceptor;
+
+    @Autowired
+    private StatementBudgetInterceptor statementBudgetInterceptor;
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(gradebookMetricsInterceptor).excludePathPatterns("/actuator/**");
+        registry.addInterceptor(statementBudgetInterceptor).excludePathPatterns("/actuator/**");
+    }
+}
@@ -0,0 +1,154 @@
+package com.luv2code.springmvc.controller;
+
+import com.luv2code.springmvc.models.GradeRequest;
+import com.luv2code.springmvc.models.GradeView;
+import com.luv2code.springmvc.models.StudentSummary;
+import com.luv2code.springmvc.models.SubjectStatistics;
+import com.luv2code.springmvc.service.GradeStatisticsService;
+import com.luv2code.springmvc.service.GradebookExportService;
+import com.luv2code.springmvc.service.StudentAndGradeService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.DigestUtils;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.AsyncWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import javax.servlet.http.HttpServletRequest;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+
+/**
+ * JSON counterpart of the gradebook pages. Rows come from the repositories as projections and
+ * Jackson writes them straight to the response. Single resources carry an ETag, a GET with a
+ * matching If-None-Match is answered with 304 and no body.
+ */
+@RestController
+@RequestMapping("/api")
+public class GradebookApiController {
+
+	private static final int MAX_PAGE_SIZE = 500;
+
+	@Autowired
+	private StudentAndGradeService studentService;
+
+	@Autowired
+	private GradeStatisticsService gradeStatistics;
+
+	@Autowired
+	private GradebookExportService exportService;
+
+	@Value("${gradebook.export.timeout:30m}")
+	private Duration exportTimeout;
+
+	// keyset pages like the roster, pass the last id of a page as after to get the next one
+	@GetMapping("/students")
+	@StatementBudget(1)
+	public List<StudentSummary> getStudents(@RequestParam(defaultValue = "0") int after,
+											@RequestParam(defaultValue = "50") int size) {
+		return studentService.getStudentSummaries(after, pageSize(size));
+	}
+
+	@GetMapping("/students/{id}")
+	@StatementBudget(1)
+	public ResponseEntity<StudentSummary> getStudent(@PathVariable int id) {
+		Optional<StudentSummary> student = studentService.getStudentSummary(id);
+		if (student.isEmpty())
+			return ResponseEntity.notFound().build();
+
+		StudentSummary summary = student.get();
+		return ResponseEntity.ok()
+				.eTag(etag(summary.getId() + "\n" + summary.getFirstname() + "\n" + summary.getLastname() + "\n"
+						+ summary.getEmailAddress()))
+				.body(summary);
+	}
+
+	@GetMapping("/students/{id}/grades")
+	@StatementBudget(2)
+	public ResponseEntity<List<GradeView>> getStudentGrades(@PathVariable int id) {
+		Optional<List<GradeView>> grades = studentService.getStudentGrades(id);
+		if (grades.isEmpty())
+			return ResponseEntity.notFound().build();
+
+		StringBuilder content = new StringBuilder();
+		for (GradeView grade : grades.get())
+			content.append(grade.getId()).append(grade.getSubject()).append(grade.getGrade()).append('\n');
+		return ResponseEntity.ok().eTag(etag(content.toString())).body(grades.get());
+	}
+
+	@GetMapping("/grades")
+	@StatementBudget(1)
+	public List<GradeView> getGrades(@RequestParam(defaultValue = "0") int after,
+									 @RequestParam(defaultValue = "50") int size) {
+		return studentService.getGrades(after, pageSize(size));
+	}
+
+	// 400 for an invalid grade or subject as well as for an unknown student
+	@PostMapping("/grades")
+	// the first grade of a subject also locks the student, retries the total update and inserts it
+	@StatementBudget(value = 5, repeats = 2)
+	public ResponseEntity<Void> createGrade(@RequestBody GradeRequest grade) {
+		if (grade.getStudentId() == null || grade.getGrade() == null || grade.getGradeType() == null
+				|| !studentService.createGrade(grade.getGrade(), grade.getStudentId(), grade.getGradeType()))
+			return ResponseEntity.badRequest().build();
+		return ResponseEntity.status(HttpStatus.CREATED).build();
+	}
+
+	// mean, median, standard deviation and histogram per subject, over the whole roster
+	@GetMapping("/stats")
+	public Map<String, SubjectStatistics> getStatistics() {
+		return gradeStatistics.getStatistics();
+	}
+
+	// every student with grades and averages, written to the response as it is read
+	@GetMapping("/export")
+	public ResponseEntity<StreamingResponseBody> export(@RequestParam(defaultValue = "csv") String format,
+													   HttpServletRequest request) {
+		GradebookExportService.Format exportFormat;
+		MediaType contentType;
+		if (format.equals("csv")) {
+			exportFormat = GradebookExportService.Format.CSV;
+			contentType = new MediaType("text", "csv", StandardCharsets.UTF_8);
+		} else if (format.equals("ndjson")) {
+			exportFormat = GradebookExportService.Format.NDJSON;
+			contentType = new MediaType("application", "x-ndjson");
+		} else {
+			return ResponseEntity.badRequest().build();
+		}
+
+		// exports run longer than other requests, this one alone gets its own async timeout
+		WebAsyncUtils.getAsyncManager(request).registerCallableInterceptor(GradebookExportService.class,
+				new CallableProcessingInterceptor() {
+					@Override
+					public <T> void beforeConcurrentHandling(NativeWebRequest webRequest, Callable<T> task) {
+						((AsyncWebRequest) webRequest).setTimeout(exportTimeout.toMillis());
+					}
+				});
+
+		return ResponseEntity.ok()
+				.contentType(contentType)
+				.header(HttpHeaders.CONTENT_DISPOSITION,
+						ContentDisposition.attachment().filename("gradebook." + format).build().toString())
+				.body(output -> exportService.export(exportFormat, output));
+	}
+
+	private static int pageSize(int size) {
+		return Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+	}
+
+	private static String etag(String content) {
+		return "\"" + DigestUtils.md5DigestAsHex(content.getBytes(StandardCharsets.UTF_8)) + "\"";
+	}
+}
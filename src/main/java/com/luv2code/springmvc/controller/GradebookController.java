@@ -3,12 +3,24 @@ package com.luv2code.springmvc.controller;
 import com.luv2code.springmvc.models.CollegeStudent;
 import com.luv2code.springmvc.models.Gradebook;
 import com.luv2code.springmvc.models.GradebookCollegeStudent;
+import com.luv2code.springmvc.models.ImportResult;
+import com.luv2code.springmvc.service.GradeImportService;
+import com.luv2code.springmvc.service.SecondLevelCacheService;
 import com.luv2code.springmvc.service.StudentAndGradeService;
+import com.luv2code.springmvc.service.StudentImportService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.List;
+import java.util.Map;
+
 @Controller
 public class GradebookController {
 
@@ -18,68 +30,138 @@ public class GradebookController {
 	@Autowired
 	private StudentAndGradeService studentService;
 
+	@Autowired
+	private GradeImportService gradeImportService;
+
+	@Autowired
+	private StudentImportService studentImportService;
+
+	@Autowired
+	private SecondLevelCacheService secondLevelCacheService;
+
+	private static final int MAX_PAGE_SIZE = 500;
+
 	@RequestMapping(value = "/", method = RequestMethod.GET)
-	public String getStudents(Model m) {
-		Iterable<CollegeStudent> collegeStudents = studentService.getGradebook();
-		m.addAttribute("students", collegeStudents);
+	@StatementBudget(1)
+	public String getStudents(@RequestParam(defaultValue = "0") int after,
+							  @RequestParam(defaultValue = "") String afterLastname,
+							  @RequestParam(defaultValue = "id") String sort,
+							  @RequestParam(defaultValue = "50") int size, Model m) {
+		addStudentPage(m, after, afterLastname, sort, size);
 		return "index";
 	}
 
+	// Post/Redirect/Get: the write does not read the roster back, the browser reloads the index
 	@PostMapping("/")
-	public String createStudent(@ModelAttribute("student") CollegeStudent student, Model m) {
+	@StatementBudget(1)
+	public String createStudent(@ModelAttribute("student") CollegeStudent student) {
 
-		studentService.createStudent(student.getFirstname(), student.getLastname(), student.getEmailAddress());
-		Iterable<CollegeStudent> collegeStudents = studentService.getGradebook();
-		m.addAttribute("students", collegeStudents);
-		return "index";
+		try {
+			studentService.createStudent(student.getFirstname(), student.getLastname(), student.getEmailAddress());
+		} catch (DataIntegrityViolationException e) {
+			// email addresses are unique
+			return "error";
+		}
+		return "redirect:/";
+	}
+
+	@PostMapping(value = "/students/import", consumes = "text/csv")
+	@ResponseBody
+	public ImportResult importStudentsCsv(Reader body) throws IOException {
+		return studentImportService.importCsv(body);
+	}
+
+	@PostMapping(value = "/students/import", consumes = "application/x-ndjson")
+	@ResponseBody
+	public ImportResult importStudentsJsonLines(Reader body) throws IOException {
+		return studentImportService.importJsonLines(body);
+	}
+
+	// end of year purge, takes a json array of student ids
+	@PostMapping(value = "/students/delete", consumes = MediaType.APPLICATION_JSON_VALUE)
+	@ResponseBody
+	public Map<String, Integer> deleteStudents(@RequestBody List<Integer> ids) {
+		return Map.of("deleted", studentService.deleteStudents(ids));
 	}
 
 	@GetMapping("/delete/student/{id}")
-	public String deleteStudent(@PathVariable("id") int id, Model m) {
+	@StatementBudget(3)
+	public String deleteStudent(@PathVariable("id") int id) {
 
-		if (studentService.checkIfStudentIsNull(id))
+		if (!studentService.deleteStudent(id))
 			return "error";
-
-		studentService.deleteStudent(id);
-		Iterable<CollegeStudent> collegeStudents = studentService.getGradebook();
-		m.addAttribute("students", collegeStudents);
-		return "index";
+		return "redirect:/";
 	}
 
+	// the first page after the statistics were invalidated also loads the class ranks
 	@GetMapping("/studentInformation/{id}")
+	@StatementBudget(3)
 	public String studentInformation(@PathVariable int id, Model m) {
 
-		if (studentService.checkIfStudentIsNull(id))
+		// the service reports a missing student, no separate existence check
+		if (!studentService.configureStudentInformationModel(id, m))
 			return "error";
 
-		studentService.configureStudentInformationModel(id, m);
-
 		return "studentInformation";
 	}
 
 	@PostMapping("/grades")
+	// the first grade of a subject also locks the student, retries the total update and inserts it
+	@StatementBudget(value = 8, repeats = 2)
 	public String createGrades(@ModelAttribute("studentId") int studentId, @ModelAttribute("grade") double grade,
 							   @ModelAttribute("gradeType") String type, Model m) {
 
-		if (studentService.checkIfStudentIsNull(studentId))
-			return "error";
-
 		boolean success = studentService.createGrade(grade, studentId, type);
 		if (!success)
 			return "error";
 
-		studentService.configureStudentInformationModel(studentId, m);
+		if (!studentService.configureStudentInformationModelAfterWrite(studentId, m))
+			return "error";
 
 		return "studentInformation";
 	}
 
 	@GetMapping("/grades/{id}/{gradeType}")
+	@StatementBudget(6)
 	public String deleteGrade(@PathVariable int id, @PathVariable String gradeType, Model m) {
 		int studentId = studentService.deleteGrade(id, gradeType);
 		if (studentId == 0)
 			return "error";
 
-		studentService.configureStudentInformationModel(studentId, m);
+		if (!studentService.configureStudentInformationModelAfterWrite(studentId, m))
+			return "error";
 		return "studentInformation";
 	}
+
+	@PostMapping(value = "/grades/import", consumes = "text/csv")
+	@ResponseBody
+	public ImportResult importGradesCsv(Reader body) throws IOException {
+		return gradeImportService.importCsv(body);
+	}
+
+	@PostMapping(value = "/grades/import", consumes = MediaType.APPLICATION_JSON_VALUE)
+	@ResponseBody
+	public ImportResult importGradesJson(InputStream body) throws IOException {
+		return gradeImportService.importJson(body);
+	}
+
+	@GetMapping("/cache/stats")
+	@ResponseBody
+	public Map<String, Object> cacheStatistics() {
+		return secondLevelCacheService.getStatistics();
+	}
+
+	private void addStudentPage(Model m, int after, String afterLastname, String sort, int size) {
+		size = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+		List<CollegeStudent> collegeStudents = studentService.getGradebookPage(after, afterLastname, sort, size);
+		m.addAttribute("students", collegeStudents);
+		m.addAttribute("sort", sort);
+		m.addAttribute("size", size);
+		// a full page means there may be more, the last row is where the next page starts
+		if (!collegeStudents.isEmpty() && collegeStudents.size() == size) {
+			CollegeStudent last = collegeStudents.get(collegeStudents.size() - 1);
+			m.addAttribute("nextAfter", last.getId());
+			m.addAttribute("nextAfterLastname", last.getLastname());
+		}
+	}
 }
@@ -0,0 +1,92 @@
+package com.luv2code.springmvc.controller;
+
+import com.luv2code.springmvc.models.SubjectGrade;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.ModelAndView;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times every handler as gradebook.requests, tagged with the handler, the grade subject it works on
+ * and whether it ended in the error view. Template rendering is timed separately as
+ * gradebook.view.render, tagged with the view.
+ */
+@Component
+public class GradebookMetricsInterceptor implements HandlerInterceptor {
+
+	private static final String START = GradebookMetricsInterceptor.class.getName() + ".start";
+
+	private static final String RENDER_START = GradebookMetricsInterceptor.class.getName() + ".renderStart";
+
+	private static final String VIEW = GradebookMetricsInterceptor.class.getName() + ".view";
+
+	@Autowired
+	private MeterRegistry registry;
+
+	@Override
+	public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+		request.setAttribute(START, System.nanoTime());
+		return true;
+	}
+
+	@Override
+	public void postHandle(HttpServletRequest request, HttpServletResponse response, Object handler,
+						   ModelAndView modelAndView) {
+		if (modelAndView != null && modelAndView.getViewName() != null) {
+			request.setAttribute(VIEW, modelAndView.getViewName());
+			request.setAttribute(RENDER_START, System.nanoTime());
+		}
+	}
+
+	@Override
+	public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+								Exception ex) {
+		Long start = (Long) request.getAttribute(START);
+		if (start == null || !(handler instanceof HandlerMethod))
+			return;
+		long end = System.nanoTime();
+		String view = (String) request.getAttribute(VIEW);
+
+		Timer.builder("gradebook.requests")
+				.tag("handler", ((HandlerMethod) handler).getMethod().getName())
+				.tag("subject", subject(request))
+				.tag("outcome", outcome(response, view, ex))
+				.register(registry)
+				.record(end - start, TimeUnit.NANOSECONDS);
+
+		Long renderStart = (Long) request.getAttribute(RENDER_START);
+		if (renderStart != null && !view.startsWith("redirect:")) {
+			Timer.builder("gradebook.view.render")
+					.tag("view", view)
+					.register(registry)
+					.record(end - renderStart, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	private static String outcome(HttpServletResponse response, String view, Exception ex) {
+		if (ex != null || response.getStatus() >= 400 || "error".equals(view))
+			return "error";
+		return "success";
+	}
+
+	// the gradeType form field or path variable, anything unknown is grouped so tags stay bounded
+	private static String subject(HttpServletRequest request) {
+		String subject = request.getParameter("gradeType");
+		if (subject == null) {
+			Map<?, ?> pathVariables = (Map<?, ?>) request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+			subject = pathVariables == null ? null : (String) pathVariables.get("gradeType");
+		}
+		if (subject == null)
+			return "none";
+		return SubjectGrade.SUBJECTS.contains(subject) ? subject : "other";
+	}
+}
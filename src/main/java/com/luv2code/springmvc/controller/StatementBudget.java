@@ -0,0 +1,20 @@
+package com.luv2code.springmvc.controller;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * The most SQL statements a handler may issue per request, checked by StatementBudgetInterceptor
+ * when gradebook.statement-budget.mode is log or fail.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface StatementBudget {
+
+	int value();
+
+	// how often one statement may run within the request, more looks like N+1 loading
+	int repeats() default 1;
+}
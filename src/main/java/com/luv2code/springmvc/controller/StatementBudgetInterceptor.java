@@ -0,0 +1,87 @@
+package com.luv2code.springmvc.controller;
+
+import com.luv2code.springmvc.config.StatementLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.servlet.ModelAndView;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Map;
+
+/**
+ * Records the statements of each request and checks them against the handler's @StatementBudget,
+ * both how often any one statement repeats and the total. In log mode violations are logged, in
+ * fail mode the request fails. The recording is left in the STATEMENTS request attribute.
+ * <p>
+ * Statements are counted by StatementCountingDataSource, whatever issues them, including reads
+ * ReadFanOut runs on other threads for the request.
+ */
+@Component
+public class StatementBudgetInterceptor implements AsyncHandlerInterceptor {
+
+	public enum Mode { OFF, LOG, FAIL }
+
+	public static final String STATEMENTS = StatementBudgetInterceptor.class.getName() + ".statements";
+
+	private static final Logger log = LoggerFactory.getLogger(StatementBudgetInterceptor.class);
+
+	private final Mode mode;
+
+	public StatementBudgetInterceptor(@Value("${gradebook.statement-budget.mode:off}") Mode mode) {
+		this.mode = mode;
+	}
+
+	@Override
+	public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+		if (mode != Mode.OFF)
+			request.setAttribute(STATEMENTS, StatementLog.start());
+		return true;
+	}
+
+	// checked before the view renders, so fail mode can still turn the response into an error
+	@Override
+	public void postHandle(HttpServletRequest request, HttpServletResponse response, Object handler,
+						   ModelAndView modelAndView) {
+		StatementLog statements = (StatementLog) request.getAttribute(STATEMENTS);
+		if (statements == null || !(handler instanceof HandlerMethod))
+			return;
+		StatementBudget budget = ((HandlerMethod) handler).getMethodAnnotation(StatementBudget.class);
+		if (budget == null)
+			return;
+
+		// repeats first, an N+1 usually blows the total too and is the more useful report
+		String handlerName = ((HandlerMethod) handler).getMethod().getName();
+		Map<String, Integer> repeated = statements.getRepeated(budget.repeats());
+		if (!repeated.isEmpty())
+			violation(handlerName + " repeated statements, possible N+1: " + repeated);
+		if (statements.getCount() > budget.value())
+			violation(handlerName + " issued " + statements.getCount() + " statements, budget is " + budget.value()
+					+ ": " + statements);
+	}
+
+	@Override
+	public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+								Exception ex) {
+		if (mode != Mode.OFF)
+			StatementLog.stop();
+	}
+
+	// async handlers (the export) get no afterCompletion on this thread, only on the async dispatch
+	@Override
+	public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response,
+											   Object handler) {
+		if (mode != Mode.OFF)
+			StatementLog.stop();
+	}
+
+	private void violation(String message) {
+		if (mode == Mode.FAIL)
+			throw new IllegalStateException(message);
+		log.warn(message);
+	}
+}
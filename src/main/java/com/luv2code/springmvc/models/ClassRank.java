@@ -0,0 +1,42 @@
+package com.luv2code.springmvc.models;
+
+/**
+ * Where a student's average in a subject stands among every student with grades in it. Rank 1
+ * is the best average, students with the same average share a rank.
+ */
+public final class ClassRank {
+
+    private final int rank;
+
+    private final int outOf;
+
+    private final double percentile;
+
+    public ClassRank(int rank, int outOf, double percentile) {
+        this.rank = rank;
+        this.outOf = outOf;
+        this.percentile = percentile;
+    }
+
+    public int getRank() {
+        return rank;
+    }
+
+    public int getOutOf() {
+        return outOf;
+    }
+
+    // share of the students whose average is at or below this one, 0 to 100
+    public double getPercentile() {
+        return percentile;
+    }
+
+    @Override
+    public String toString() {
+        return "ClassRank{" +
+                "rank=" + rank +
+                ", outOf=" + outOf +
+                ", percentile=" + percentile +
+                '}';
+    }
+}
@@ -3,7 +3,9 @@ package com.luv2code.springmvc.models;
 import javax.persistence.*;
 
 @Entity
-@Table(name = "student")
+@Table(name = "student",
+        indexes = @Index(name = "idx_student_lastname_id", columnList = "lastname, id"),
+        uniqueConstraints = @UniqueConstraint(name = "uk_student_email_address", columnNames = "email_address"))
 public class CollegeStudent implements Student {
     @Id
     @GeneratedValue(strategy= GenerationType.IDENTITY)
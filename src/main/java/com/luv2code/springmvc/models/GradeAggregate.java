@@ -0,0 +1,60 @@
+package com.luv2code.springmvc.models;
+
+import java.util.List;
+
+/**
+ * Count and sum of one student's grades in one subject.
+ */
+public final class GradeAggregate {
+
+    public static final GradeAggregate EMPTY = new GradeAggregate(0, 0);
+
+    private final long count;
+
+    private final double sum;
+
+    public GradeAggregate(long count, double sum) {
+        this.count = count;
+        this.sum = sum;
+    }
+
+    public static GradeAggregate of(List<Grade> grades) {
+        double sum = 0;
+        for (Grade grade : grades) {
+            sum += grade.getGrade();
+        }
+        return new GradeAggregate(grades.size(), sum);
+    }
+
+    public GradeAggregate add(double grade) {
+        return new GradeAggregate(count + 1, sum + grade);
+    }
+
+    public GradeAggregate remove(double grade) {
+        return count <= 1 ? EMPTY : new GradeAggregate(count - 1, sum - grade);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getSum() {
+        return sum;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    public double getAverage() {
+        return StudentGrades.roundToTwoDecimals(sum / count);
+    }
+
+    @Override
+    public String toString() {
+        return "GradeAggregate{" +
+                "count=" + count +
+                ", sum=" + sum +
+                '}';
+    }
+}
@@ -0,0 +1,70 @@
+package com.luv2code.springmvc.models;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Grades of one subject held in a primitive array, so summing them touches no boxed values.
+ */
+public final class GradeBuffer {
+
+    private double[] grades;
+
+    private int size;
+
+    public GradeBuffer() {
+        this(16);
+    }
+
+    public GradeBuffer(int capacity) {
+        this.grades = new double[Math.max(1, capacity)];
+    }
+
+    public static GradeBuffer of(List<Grade> grades) {
+        GradeBuffer buffer = new GradeBuffer(grades.size());
+        for (Grade grade : grades) {
+            buffer.add(grade.getGrade());
+        }
+        return buffer;
+    }
+
+    public void add(double grade) {
+        if (size == grades.length)
+            grades = Arrays.copyOf(grades, size * 2);
+        grades[size++] = grade;
+    }
+
+    // keeps the array, so a buffer can be reused for the next student
+    public void clear() {
+        size = 0;
+    }
+
+    public double get(int index) {
+        if (index >= size)
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        return grades[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public double sum() {
+        double result = 0;
+        for (int i = 0; i < size; i++) {
+            result += grades[i];
+        }
+        return result;
+    }
+
+    /**
+     * Same result as {@link StudentGrades#findGradePointAverage(List)}, without allocating.
+     */
+    public double average() {
+        return StudentGrades.roundToTwoDecimals(sum() / size);
+    }
+}
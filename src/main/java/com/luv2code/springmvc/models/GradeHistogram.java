@@ -0,0 +1,104 @@
+package com.luv2code.springmvc.models;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Counting array of one subject's grades, one slot per hundredth between 0 and 100. Mean,
+ * standard deviation and median come from the counts alone, so the grades themselves
+ * never have to be held or sorted, and adding or removing a grade is a single increment.
+ */
+public final class GradeHistogram {
+
+    private static final int SLOTS = 10_001;
+
+    private static final int BUCKET_WIDTH = 10;
+
+    private final long[] counts = new long[SLOTS];
+
+    private long count;
+
+    public void add(double grade, long times) {
+        counts[slot(grade)] += times;
+        count += times;
+    }
+
+    public void add(double grade) {
+        add(grade, 1);
+    }
+
+    // a grade that was never added is ignored
+    public void remove(double grade) {
+        int slot = slot(grade);
+        if (counts[slot] > 0) {
+            counts[slot]--;
+            count--;
+        }
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMean() {
+        if (count == 0)
+            return Double.NaN;
+        double sum = 0;
+        for (int i = 0; i < SLOTS; i++) {
+            sum += counts[i] * (double) i;
+        }
+        return sum / count / 100;
+    }
+
+    // population standard deviation
+    public double getStandardDeviation() {
+        if (count == 0)
+            return Double.NaN;
+        double mean = getMean() * 100;
+        double squares = 0;
+        for (int i = 0; i < SLOTS; i++) {
+            double delta = i - mean;
+            squares += counts[i] * delta * delta;
+        }
+        return Math.sqrt(squares / count) / 100;
+    }
+
+    public double getMedian() {
+        if (count == 0)
+            return Double.NaN;
+        if (count % 2 == 1)
+            return gradeAt(count / 2);
+        return (gradeAt(count / 2 - 1) + gradeAt(count / 2)) / 2;
+    }
+
+    /**
+     * Grade counts in buckets of ten points, "0-9" up to "90-100" which also holds the 100s.
+     */
+    public Map<String, Long> getBuckets() {
+        Map<String, Long> buckets = new LinkedHashMap<>();
+        for (int low = 0; low < 100; low += BUCKET_WIDTH) {
+            int high = low + BUCKET_WIDTH;
+            long bucket = 0;
+            for (int i = low * 100; i < high * 100 || (high == 100 && i < SLOTS); i++) {
+                bucket += counts[i];
+            }
+            buckets.put(low + "-" + (high == 100 ? 100 : high - 1), bucket);
+        }
+        return buckets;
+    }
+
+    // the grade at the given zero based position in sorted order
+    private double gradeAt(long position) {
+        long seen = 0;
+        for (int i = 0; i < SLOTS; i++) {
+            seen += counts[i];
+            if (seen > position)
+                return i / 100.0;
+        }
+        throw new IllegalStateException("Position " + position + " past " + count + " grades");
+    }
+
+    private static int slot(double grade) {
+        return (int) Math.max(0, Math.min(SLOTS - 1, Math.round(grade * 100)));
+    }
+}
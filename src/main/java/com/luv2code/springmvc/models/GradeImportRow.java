@@ -0,0 +1,58 @@
+package com.luv2code.springmvc.models;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+public class GradeImportRow {
+
+    @JsonIgnore
+    private int rowNumber;
+
+    private Integer studentId;
+
+    private String gradeType;
+
+    private Double grade;
+
+    public GradeImportRow() {
+
+    }
+
+    public GradeImportRow(int rowNumber, Integer studentId, String gradeType, Double grade) {
+        this.rowNumber = rowNumber;
+        this.studentId = studentId;
+        this.gradeType = gradeType;
+        this.grade = grade;
+    }
+
+    public int getRowNumber() {
+        return rowNumber;
+    }
+
+    public void setRowNumber(int rowNumber) {
+        this.rowNumber = rowNumber;
+    }
+
+    public Integer getStudentId() {
+        return studentId;
+    }
+
+    public void setStudentId(Integer studentId) {
+        this.studentId = studentId;
+    }
+
+    public String getGradeType() {
+        return gradeType;
+    }
+
+    public void setGradeType(String gradeType) {
+        this.gradeType = gradeType;
+    }
+
+    public Double getGrade() {
+        return grade;
+    }
+
+    public void setGrade(Double grade) {
+        this.grade = grade;
+    }
+}
@@ -0,0 +1,47 @@
+package com.luv2code.springmvc.models;
+
+/**
+ * Body of POST /api/grades. Fields are boxed so a missing one is told apart from a zero.
+ */
+public class GradeRequest {
+
+    private Integer studentId;
+
+    private String gradeType;
+
+    private Double grade;
+
+    public GradeRequest() {
+
+    }
+
+    public GradeRequest(Integer studentId, String gradeType, Double grade) {
+        this.studentId = studentId;
+        this.gradeType = gradeType;
+        this.grade = grade;
+    }
+
+    public Integer getStudentId() {
+        return studentId;
+    }
+
+    public void setStudentId(Integer studentId) {
+        this.studentId = studentId;
+    }
+
+    public String getGradeType() {
+        return gradeType;
+    }
+
+    public void setGradeType(String gradeType) {
+        this.gradeType = gradeType;
+    }
+
+    public Double getGrade() {
+        return grade;
+    }
+
+    public void setGrade(Double grade) {
+        this.grade = grade;
+    }
+}
@@ -0,0 +1,15 @@
+package com.luv2code.springmvc.models;
+
+/**
+ * One grade row as the API returns it, straight from the grade table.
+ */
+public interface GradeView {
+
+    int getId();
+
+    int getStudentId();
+
+    String getSubject();
+
+    double getGrade();
+}
@@ -0,0 +1,71 @@
+package com.luv2code.springmvc.models;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ImportResult {
+
+    private int imported;
+
+    private int skipped;
+
+    private long elapsedMillis;
+
+    private final List<RowError> errors = new ArrayList<>();
+
+    public int getImported() {
+        return imported;
+    }
+
+    public void addImported(int count) {
+        imported += count;
+    }
+
+    public int getSkipped() {
+        return skipped;
+    }
+
+    public void addSkipped(int count) {
+        skipped += count;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public void setElapsedMillis(long elapsedMillis) {
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public long getRowsPerSecond() {
+        return elapsedMillis == 0 ? imported : imported * 1000L / elapsedMillis;
+    }
+
+    public List<RowError> getErrors() {
+        return errors;
+    }
+
+    public void addError(int row, String message) {
+        errors.add(new RowError(row, message));
+    }
+
+    public static class RowError {
+
+        private final int row;
+
+        private final String message;
+
+        public RowError(int row, String message) {
+            this.row = row;
+            this.message = message;
+        }
+
+        public int getRow() {
+            return row;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+}
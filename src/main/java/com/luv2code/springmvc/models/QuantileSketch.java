@@ -0,0 +1,152 @@
+package com.luv2code.springmvc.models;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * KLL quantile sketch. Values go into level 0. When the sketch is over its capacity, the first
+ * level that is over its own capacity is sorted and every other value, starting at a random one
+ * of the first two, moves up a level with twice the weight. Levels get smaller the further they
+ * are below the top, so the sketch holds about 3k values whatever the count, and rank estimates
+ * are off by roughly 1.7 / k of the count. Until k values have been added it is exact.
+ * <p>
+ * Sketches of disjoint parts of the data merge into a sketch of the whole. Not thread safe.
+ */
+public final class QuantileSketch {
+
+    public static final int DEFAULT_K = 200;
+
+    private static final double LEVEL_RATIO = 2.0 / 3.0;
+
+    private final int k;
+
+    private final SplittableRandom random;
+
+    // levels.get(h) holds values of weight 2^h, sizes[h] of them in use
+    private final List<double[]> levels = new ArrayList<>();
+
+    private int[] sizes = new int[0];
+
+    private long count;
+
+    public QuantileSketch() {
+        this(DEFAULT_K, 42);
+    }
+
+    public QuantileSketch(int k, long seed) {
+        if (k < 8)
+            throw new IllegalArgumentException("k must be at least 8, was " + k);
+        this.k = k;
+        this.random = new SplittableRandom(seed);
+        addLevel();
+    }
+
+    public void update(double value) {
+        append(0, value);
+        count++;
+        compress();
+    }
+
+    public QuantileSketch merge(QuantileSketch other) {
+        for (int h = 0; h < other.levels.size(); h++) {
+            double[] values = other.levels.get(h);
+            for (int i = 0; i < other.sizes[h]; i++) {
+                append(h, values[i]);
+            }
+        }
+        count += other.count;
+        compress();
+        return this;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    // values held, bounded by about 3k
+    public int getRetained() {
+        int retained = 0;
+        for (int size : sizes) {
+            retained += size;
+        }
+        return retained;
+    }
+
+    /**
+     * Estimated number of values at or below the given one.
+     */
+    public long rank(double value) {
+        long rank = 0;
+        for (int h = 0; h < levels.size(); h++) {
+            double[] values = levels.get(h);
+            long weight = 1L << h;
+            for (int i = 0; i < sizes[h]; i++) {
+                if (values[i] <= value)
+                    rank += weight;
+            }
+        }
+        return rank;
+    }
+
+    private void append(int level, double value) {
+        while (levels.size() <= level) {
+            addLevel();
+        }
+        double[] values = levels.get(level);
+        if (sizes[level] == values.length) {
+            values = Arrays.copyOf(values, values.length * 2);
+            levels.set(level, values);
+        }
+        values[sizes[level]++] = value;
+    }
+
+    private void addLevel() {
+        levels.add(new double[Math.max(2, k / 4)]);
+        sizes = Arrays.copyOf(sizes, levels.size());
+    }
+
+    // the top level holds k values, each level below two thirds of the one above, at least 2
+    private int capacity(int level) {
+        int depth = levels.size() - 1 - level;
+        return Math.max(2, (int) Math.ceil(k * Math.pow(LEVEL_RATIO, depth)));
+    }
+
+    private void compress() {
+        while (true) {
+            int total = 0;
+            int totalCapacity = 0;
+            for (int h = 0; h < levels.size(); h++) {
+                total += sizes[h];
+                totalCapacity += capacity(h);
+            }
+            if (total <= totalCapacity)
+                return;
+            for (int h = 0; h < levels.size(); h++) {
+                if (sizes[h] >= capacity(h)) {
+                    compact(h);
+                    break;
+                }
+            }
+        }
+    }
+
+    // promotes every other value of the level to the next one, an odd one out stays behind
+    private void compact(int level) {
+        double[] values = levels.get(level);
+        int size = sizes[level];
+        Arrays.sort(values, 0, size);
+        double leftOver = Double.NaN;
+        if (size % 2 == 1) {
+            leftOver = values[--size];
+        }
+        for (int i = random.nextInt(2); i < size; i += 2) {
+            append(level + 1, values[i]);
+        }
+        // append may have replaced the array of the next level, never this one
+        sizes[level] = 0;
+        if (!Double.isNaN(leftOver))
+            values[sizes[level]++] = leftOver;
+    }
+}
@@ -0,0 +1,22 @@
+package com.luv2code.springmvc.models;
+
+/**
+ * One row of the student information query: the student columns repeated for
+ * each grade, or a single row with null grade columns when there are no grades.
+ */
+public interface StudentGradeRow {
+
+    int getStudentId();
+
+    String getFirstname();
+
+    String getLastname();
+
+    String getEmailAddress();
+
+    String getSubject();
+
+    Integer getGradeId();
+
+    Double getGrade();
+}
@@ -0,0 +1,90 @@
+package com.luv2code.springmvc.models;
+
+import javax.persistence.*;
+
+/**
+ * Running count, sum and sum of squares of one student's grades in one subject, kept up to date
+ * by every grade write so averages never need the grade rows.
+ */
+@Entity
+@Table(name = "student_grade_total",
+        uniqueConstraints = @UniqueConstraint(name = "uk_student_grade_total", columnNames = {"student_id", "subject"}))
+public class StudentGradeTotal {
+    @Id
+    @GeneratedValue(strategy= GenerationType.IDENTITY)
+    private int id;
+    @Column(name="student_id")
+    private int studentId;
+    @Column(name="subject")
+    private String subject;
+    @Column(name="grade_count")
+    private long gradeCount;
+    @Column(name="grade_sum")
+    private double gradeSum;
+    @Column(name="grade_sum_squares")
+    private double gradeSumOfSquares;
+
+    public StudentGradeTotal() {
+
+    }
+
+    public StudentGradeTotal(int studentId, String subject, long gradeCount, double gradeSum, double gradeSumOfSquares) {
+        this.studentId = studentId;
+        this.subject = subject;
+        this.gradeCount = gradeCount;
+        this.gradeSum = gradeSum;
+        this.gradeSumOfSquares = gradeSumOfSquares;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    public int getStudentId() {
+        return studentId;
+    }
+
+    public void setStudentId(int studentId) {
+        this.studentId = studentId;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public void setSubject(String subject) {
+        this.subject = subject;
+    }
+
+    public long getGradeCount() {
+        return gradeCount;
+    }
+
+    public void setGradeCount(long gradeCount) {
+        this.gradeCount = gradeCount;
+    }
+
+    public double getGradeSum() {
+        return gradeSum;
+    }
+
+    public void setGradeSum(double gradeSum) {
+        this.gradeSum = gradeSum;
+    }
+
+    public double getGradeSumOfSquares() {
+        return gradeSumOfSquares;
+    }
+
+    public void setGradeSumOfSquares(double gradeSumOfSquares) {
+        this.gradeSumOfSquares = gradeSumOfSquares;
+    }
+
+    public GradeAggregate toAggregate() {
+        return new GradeAggregate(gradeCount, gradeSum);
+    }
+}
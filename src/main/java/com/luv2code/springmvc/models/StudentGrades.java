@@ -1,21 +1,30 @@
 package com.luv2code.springmvc.models;
 
-import org.springframework.stereotype.Component;
-
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.util.List;
 
-@Component
-public class StudentGrades {
+/**
+ * Immutable snapshot of one student's grades, built per call so concurrent
+ * requests never share state.
+ */
+public final class StudentGrades {
+
+    private final List<Grade> mathGradeResults;
 
-    private List<Grade> mathGradeResults;
+    private final List<Grade> scienceGradeResults;
 
-    private List<Grade> scienceGradeResults;
+    private final List<Grade> historyGradeResults;
 
-    private List<Grade> historyGradeResults;
+    public StudentGrades() {
+        this(List.of(), List.of(), List.of());
+    }
 
-    public StudentGrades() {}
+    public StudentGrades(List<Grade> mathGradeResults, List<Grade> scienceGradeResults, List<Grade> historyGradeResults) {
+        this.mathGradeResults = List.copyOf(mathGradeResults);
+        this.scienceGradeResults = List.copyOf(scienceGradeResults);
+        this.historyGradeResults = List.copyOf(historyGradeResults);
+    }
 
     public double addGradeResultsForSingleClass(List<Grade> grades) {
         double result = 0;
@@ -29,38 +38,45 @@ public class StudentGrades {
         int lengthOfGrades = grades.size();
         double sum = addGradeResultsForSingleClass(grades);
         double result = sum / lengthOfGrades;
+        return roundToTwoDecimals(result);
+    }
+
+    public double findGradePointAverage(GradeBuffer grades) {
+        return grades.average();
+    }
 
-        // add a round function
-        BigDecimal resultRound = BigDecimal.valueOf(result);
+    /**
+     * HALF_UP to 2 decimal places of the value's decimal form, as BigDecimal.valueOf does it.
+     * Only values whose scaled fraction lies right at .5 need the decimal form, the rest round the
+     * same way in binary, so the common case allocates nothing.
+     */
+    public static double roundToTwoDecimals(double value) {
+        double scaled = Math.abs(value) * 100;
+        if (scaled < 1e9) {
+            double floor = Math.floor(scaled);
+            double fraction = scaled - floor;
+            if (Math.abs(fraction - 0.5) > 1e-6) {
+                double rounded = (fraction > 0.5 ? floor + 1 : floor) / 100;
+                return rounded == 0 ? 0.0 : Math.copySign(rounded, value);  // BigDecimal has no -0.0
+            }
+        }
+        BigDecimal resultRound = BigDecimal.valueOf(value);
         resultRound = resultRound.setScale(2, RoundingMode.HALF_UP);
         return resultRound.doubleValue();
-
     }
 
     public List<Grade> getMathGradeResults() {
         return mathGradeResults;
     }
 
-    public void setMathGradeResults(List<Grade> mathGradeResults) {
-        this.mathGradeResults = mathGradeResults;
-    }
-
     public List<Grade> getScienceGradeResults() {
         return scienceGradeResults;
     }
 
-    public void setScienceGradeResults(List<Grade> scienceGradeResults) {
-        this.scienceGradeResults = scienceGradeResults;
-    }
-
     public List<Grade> getHistoryGradeResults() {
         return historyGradeResults;
     }
 
-    public void setHistoryGradeResults(List<Grade> historyGradeResults) {
-        this.historyGradeResults = historyGradeResults;
-    }
-
     @Override
     public String toString() {
         return "StudentGrades{" +
@@ -0,0 +1,15 @@
+package com.luv2code.springmvc.models;
+
+/**
+ * The columns of a student the API returns, read as a projection so no entity is built.
+ */
+public interface StudentSummary {
+
+    int getId();
+
+    String getFirstname();
+
+    String getLastname();
+
+    String getEmailAddress();
+}
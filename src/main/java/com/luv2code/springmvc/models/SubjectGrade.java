@@ -0,0 +1,85 @@
+package com.luv2code.springmvc.models;
+
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.DiscriminatorOptions;
+
+import javax.persistence.*;
+import java.util.Set;
+
+/**
+ * Grades of every subject live in one table, keyed by student and subject. Each subject is a
+ * subclass told apart by the subject column, so a student's grades are one index range scan and a
+ * new subject needs no table or query of its own.
+ */
+@Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "grade")
+@Table(name = "student_grade",
+        indexes = @Index(name = "idx_student_grade_student_subject", columnList = "student_id, subject"))
+@Inheritance(strategy = InheritanceType.SINGLE_TABLE)
+@DiscriminatorColumn(name = "subject", discriminatorType = DiscriminatorType.STRING, length = 31)
+@DiscriminatorOptions(force = true)
+public abstract class SubjectGrade implements Grade {
+
+    public static final Set<String> SUBJECTS = Set.of("math", "science", "history");
+
+    @Id
+    @GeneratedValue(strategy= GenerationType.IDENTITY)
+    private int id;
+    @Column(name="student_id")
+    private int studentId;
+    @Column(name="grade")
+    private double grade;
+
+    protected SubjectGrade() {
+
+    }
+
+    protected SubjectGrade(double grade) {
+        this.grade = grade;
+    }
+
+    /**
+     * A new grade of the given subject, or null when there is no such subject.
+     */
+    public static SubjectGrade create(String subject, double grade) {
+        switch (subject) {
+            case "math":
+                return new MathGrade(grade);
+            case "science":
+                return new ScienceGrade(grade);
+            case "history":
+                return new HistoryGrade(grade);
+            default:
+                return null;
+        }
+    }
+
+    public abstract String getSubject();
+
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    public int getStudentId() {
+        return studentId;
+    }
+
+    public void setStudentId(int studentId) {
+        this.studentId = studentId;
+    }
+
+    @Override
+    public double getGrade() {
+        return grade;
+    }
+
+    public void setGrade(double grade) {
+        this.grade = grade;
+    }
+}
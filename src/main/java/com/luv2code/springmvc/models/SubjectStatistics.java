@@ -0,0 +1,47 @@
+package com.luv2code.springmvc.models;
+
+import java.util.Map;
+
+/**
+ * Class-wide figures of one subject, over every grade of every student.
+ */
+public final class SubjectStatistics {
+
+    private final long count;
+
+    private final double mean;
+
+    private final double median;
+
+    private final double standardDeviation;
+
+    private final Map<String, Long> histogram;
+
+    public SubjectStatistics(GradeHistogram grades) {
+        this.count = grades.getCount();
+        this.mean = StudentGrades.roundToTwoDecimals(grades.getMean());
+        this.median = grades.getMedian();
+        this.standardDeviation = StudentGrades.roundToTwoDecimals(grades.getStandardDeviation());
+        this.histogram = grades.getBuckets();
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public double getMedian() {
+        return median;
+    }
+
+    public double getStandardDeviation() {
+        return standardDeviation;
+    }
+
+    public Map<String, Long> getHistogram() {
+        return histogram;
+    }
+}
@@ -0,0 +1,43 @@
+package com.luv2code.springmvc.repository;
+
+import com.luv2code.springmvc.models.GradeView;
+import com.luv2code.springmvc.models.SubjectGrade;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.QueryHint;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface GradeDao extends CrudRepository<SubjectGrade, Integer> {
+
+    public Iterable<SubjectGrade> findGradeByStudentId(int id);
+
+    @Query(value = "SELECT id, student_id AS studentId, subject, grade FROM student_grade " +
+            "WHERE student_id = :studentId ORDER BY id", nativeQuery = true)
+    public List<GradeView> findViewsByStudentId(@Param("studentId") int studentId);
+
+    // keyset page over all grades
+    @Query(value = "SELECT id, student_id AS studentId, subject, grade FROM student_grade " +
+            "WHERE id > :after ORDER BY id", nativeQuery = true)
+    public List<GradeView> findViewsAfter(@Param("after") int after, Pageable pageable);
+
+    // inserts nothing and returns 0 when there is no such student, so no separate existence check.
+    // The declared table keeps hibernate from dropping every cached region after this native insert
+    @Modifying
+    @QueryHints(@QueryHint(name = "org.hibernate.query.native.spaces", value = "student_grade"))
+    @Query(value = "INSERT INTO student_grade(subject, student_id, grade) " +
+            "SELECT :subject, s.id, :grade FROM student s WHERE s.id = :studentId", nativeQuery = true)
+    public int insertForStudent(@Param("studentId") int studentId, @Param("subject") String subject,
+                                @Param("grade") double grade);
+
+    @Modifying
+    @Query("DELETE FROM SubjectGrade g WHERE g.studentId IN :studentIds")
+    public int deleteByStudentIdIn(@Param("studentIds") Collection<Integer> studentIds);
+}
@@ -8,5 +8,4 @@ import org.springframework.stereotype.Repository;
 public interface HistoryGradeDao extends CrudRepository<HistoryGrade, Integer> {
 
     public Iterable<HistoryGrade> findGradeByStudentId(int id);
-    public void deleteByStudentId(int id);
 }
@@ -8,5 +8,4 @@ import org.springframework.stereotype.Repository;
 public interface MathGradeDao extends CrudRepository<MathGrade, Integer> {
 
     public Iterable<MathGrade> findGradeByStudentId(int id);
-    public void deleteByStudentId(int id);
 }
@@ -1,6 +1,5 @@
 package com.luv2code.springmvc.repository;
 
-import com.luv2code.springmvc.models.MathGrade;
 import com.luv2code.springmvc.models.ScienceGrade;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.stereotype.Repository;
@@ -9,5 +8,4 @@ import org.springframework.stereotype.Repository;
 public interface ScienceGradeDao extends CrudRepository<ScienceGrade, Integer> {
 
     public Iterable<ScienceGrade> findGradeByStudentId(int id);
-    public void deleteByStudentId(int id);
 }
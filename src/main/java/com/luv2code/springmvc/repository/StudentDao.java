@@ -1,11 +1,57 @@
 package com.luv2code.springmvc.repository;
 
 import com.luv2code.springmvc.models.CollegeStudent;
+import com.luv2code.springmvc.models.StudentGradeRow;
+import com.luv2code.springmvc.models.StudentSummary;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
 @Repository
 public interface StudentDao extends CrudRepository<CollegeStudent, Integer> {
 
     public CollegeStudent findByEmailAddress(String email);
+
+    // Keyset (seek) pages: a page costs the same however deep into the roster it is
+    public List<CollegeStudent> findByIdGreaterThanOrderByIdAsc(int id, Pageable pageable);
+
+    // projections select only the summary columns and put nothing in the persistence context
+    public List<StudentSummary> findSummariesByIdGreaterThanOrderByIdAsc(int id, Pageable pageable);
+
+    public Optional<StudentSummary> findSummaryById(int id);
+
+    @Query("SELECT s FROM CollegeStudent s WHERE s.lastname > :lastname " +
+            "OR (s.lastname = :lastname AND s.id > :id) ORDER BY s.lastname, s.id")
+    public List<CollegeStudent> findPageOrderByLastname(@Param("lastname") String lastname, @Param("id") int id,
+                                                        Pageable pageable);
+
+    @Query("SELECT s.emailAddress FROM CollegeStudent s WHERE s.emailAddress IN :emails")
+    public List<String> findExistingEmailAddresses(@Param("emails") Collection<String> emails);
+
+    @Query("SELECT s.id FROM CollegeStudent s WHERE s.id IN :ids")
+    public List<Integer> findExistingIds(@Param("ids") Collection<Integer> ids);
+
+    // Row locks on the students, held until the transaction ends. Whoever creates or repairs a
+    // student's grade totals takes them first, so two writers never both insert the same total.
+    @Query(value = "SELECT id FROM student WHERE id IN :ids ORDER BY id FOR UPDATE", nativeQuery = true)
+    public List<Integer> lockByIdIn(@Param("ids") Collection<Integer> ids);
+
+    // returns how many of the ids existed
+    @Modifying
+    @Query("DELETE FROM CollegeStudent s WHERE s.id IN :ids")
+    public int deleteByIdIn(@Param("ids") Collection<Integer> ids);
+
+    // Student and all of its grades in a single round trip
+    @Query(value = "SELECT s.id AS studentId, s.firstname AS firstname, s.lastname AS lastname, " +
+            "s.email_address AS emailAddress, g.subject AS subject, g.id AS gradeId, g.grade AS grade " +
+            "FROM student s LEFT JOIN student_grade g ON g.student_id = s.id " +
+            "WHERE s.id = :studentId ORDER BY g.id", nativeQuery = true)
+    public List<StudentGradeRow> findStudentWithGrades(@Param("studentId") int studentId);
 }
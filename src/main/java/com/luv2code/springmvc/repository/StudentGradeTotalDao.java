@@ -0,0 +1,34 @@
+package com.luv2code.springmvc.repository;
+
+import com.luv2code.springmvc.models.StudentGradeTotal;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface StudentGradeTotalDao extends CrudRepository<StudentGradeTotal, Integer> {
+
+    public List<StudentGradeTotal> findByStudentId(int studentId);
+
+    // returns 0 when the student has no total for the subject yet
+    @Modifying
+    @Query("UPDATE StudentGradeTotal t SET t.gradeCount = t.gradeCount + 1, t.gradeSum = t.gradeSum + :grade, " +
+            "t.gradeSumOfSquares = t.gradeSumOfSquares + :grade * :grade " +
+            "WHERE t.studentId = :studentId AND t.subject = :subject")
+    public int addGrade(@Param("studentId") int studentId, @Param("subject") String subject, @Param("grade") double grade);
+
+    @Modifying
+    @Query("UPDATE StudentGradeTotal t SET t.gradeCount = t.gradeCount - 1, t.gradeSum = t.gradeSum - :grade, " +
+            "t.gradeSumOfSquares = t.gradeSumOfSquares - :grade * :grade " +
+            "WHERE t.studentId = :studentId AND t.subject = :subject")
+    public int removeGrade(@Param("studentId") int studentId, @Param("subject") String subject, @Param("grade") double grade);
+
+    @Modifying
+    @Query("DELETE FROM StudentGradeTotal t WHERE t.studentId IN :studentIds")
+    public int deleteByStudentIdIn(@Param("studentIds") Collection<Integer> studentIds);
+}
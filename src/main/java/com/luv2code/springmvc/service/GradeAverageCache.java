@@ -0,0 +1,189 @@
+package com.luv2code.springmvc.service;
+
+import com.luv2code.springmvc.models.GradeAggregate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Bounded LRU cache of each student's per-subject grade aggregates. Grade writes update the
+ * cached entry and student deletes drop it, both once the surrounding transaction has committed.
+ * <p>
+ * A load that a write of the same student overlaps is returned but not cached, it may have read
+ * the totals from before the write. Entries also expire after gradebook.cache.averages.ttl. That
+ * bounds how stale an entry can get from a write this process never sees, e.g. one made by
+ * another instance, or one committed after a load's transaction took its snapshot.
+ */
+@Component
+public class GradeAverageCache {
+
+    private final int maxSize;
+
+    private final long ttlNanos;
+
+    private final LinkedHashMap<Integer, Entry> entries;
+
+    // per student with a load in progress, the token of the latest load; a write removes it
+    private final Map<Integer, Object> loads = new HashMap<>();
+
+    private long hits;
+
+    private long misses;
+
+    private long evictions;
+
+    public GradeAverageCache(@Value("${gradebook.cache.averages.max-size:10000}") int maxSize,
+                             @Value("${gradebook.cache.averages.ttl:10m}") Duration ttl) {
+        this.maxSize = maxSize;
+        this.ttlNanos = ttl.toNanos();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Entry> eldest) {
+                if (size() > GradeAverageCache.this.maxSize) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * The cached aggregates of the student, or the loaded ones which are then cached.
+     */
+    public Map<String, GradeAggregate> get(int studentId, Supplier<Map<String, GradeAggregate>> loader) {
+        Object load = new Object();
+        synchronized (this) {
+            Entry entry = current(studentId);
+            if (entry != null) {
+                hits++;
+                return entry.aggregates;
+            }
+            misses++;
+            loads.put(studentId, load);
+        }
+        // load outside the lock, only kept when no write and no later load of the student came in between
+        Map<String, GradeAggregate> aggregates;
+        try {
+            aggregates = Map.copyOf(loader.get());
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                loads.remove(studentId, load);
+            }
+            throw e;
+        }
+        synchronized (this) {
+            if (loads.remove(studentId, load))
+                entries.put(studentId, new Entry(aggregates, System.nanoTime()));
+        }
+        return aggregates;
+    }
+
+    // no hit or miss counted
+    public synchronized boolean contains(int studentId) {
+        return current(studentId) != null;
+    }
+
+    // the cached aggregates or null, no hit or miss counted and nothing loaded
+    public synchronized Map<String, GradeAggregate> peek(int studentId) {
+        Entry entry = current(studentId);
+        return entry == null ? null : entry.aggregates;
+    }
+
+    public void addGrade(int studentId, String subject, double grade) {
+        afterCommit(() -> update(studentId, subject, grade, true));
+    }
+
+    public void removeGrade(int studentId, String subject, double grade) {
+        afterCommit(() -> update(studentId, subject, grade, false));
+    }
+
+    public void invalidateAll(Collection<Integer> studentIds) {
+        afterCommit(() -> {
+            synchronized (this) {
+                entries.keySet().removeAll(studentIds);
+                loads.keySet().removeAll(studentIds);
+            }
+        });
+    }
+
+    // drops every entry and starts the hit, miss and eviction counts over
+    public synchronized void clear() {
+        entries.clear();
+        loads.clear();
+        hits = 0;
+        misses = 0;
+        evictions = 0;
+    }
+
+    private synchronized void update(int studentId, String subject, double grade, boolean add) {
+        loads.remove(studentId);
+        Entry entry = current(studentId);
+        if (entry == null)
+            return;     // not cached, the next read loads it
+        Map<String, GradeAggregate> updated = new HashMap<>(entry.aggregates);
+        GradeAggregate aggregate = updated.getOrDefault(subject, GradeAggregate.EMPTY);
+        updated.put(subject, add ? aggregate.add(grade) : aggregate.remove(grade));
+        // patched entries keep their load time, the ttl still counts from the last read of the database
+        entries.put(studentId, new Entry(Map.copyOf(updated), entry.loadedAt));
+    }
+
+    // the entry unless missing or expired, an expired one is dropped
+    private Entry current(int studentId) {
+        Entry entry = entries.get(studentId);
+        if (entry != null && System.nanoTime() - entry.loadedAt > ttlNanos) {
+            entries.remove(studentId);
+            return null;
+        }
+        return entry;
+    }
+
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    private static final class Entry {
+
+        private final Map<String, GradeAggregate> aggregates;
+
+        private final long loadedAt;
+
+        private Entry(Map<String, GradeAggregate> aggregates, long loadedAt) {
+            this.aggregates = aggregates;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
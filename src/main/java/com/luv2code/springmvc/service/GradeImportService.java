@@ -0,0 +1,195 @@
+package com.luv2code.springmvc.service;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.luv2code.springmvc.models.GradeImportRow;
+import com.luv2code.springmvc.models.ImportResult;
+import com.luv2code.springmvc.models.SubjectGrade;
+import com.luv2code.springmvc.repository.StudentDao;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Imports grades in bulk. Rows are read as a stream and handled in batches: the students of a
+ * batch are checked with one query and its grades are written with JDBC batch inserts.
+ */
+@Service
+@Transactional
+public class GradeImportService {
+
+    @Autowired
+    private StudentDao studentDao;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private GradeAverageCache gradeAverageCache;
+
+    @Autowired
+    private GradeStatisticsService gradeStatistics;
+
+    @Value("${gradebook.import.batch-size:1000}")
+    private int batchSize;
+
+    /**
+     * Rows of studentId,gradeType,grade with an optional header line.
+     */
+    public ImportResult importCsv(Reader reader) throws IOException {
+        long start = System.currentTimeMillis();
+        ImportResult result = new ImportResult();
+        List<GradeImportRow> batch = new ArrayList<>(batchSize);
+        BufferedReader lines = new BufferedReader(reader);
+        String line;
+        int rowNumber = 0;
+        while ((line = lines.readLine()) != null) {
+            rowNumber++;
+            if (line.isBlank() || (rowNumber == 1 && line.startsWith("studentId")))
+                continue;
+
+            String[] columns = line.split(",");
+            if (columns.length != 3) {
+                result.addError(rowNumber, "Expected studentId,gradeType,grade");
+                continue;
+            }
+            try {
+                batch.add(new GradeImportRow(rowNumber, Integer.valueOf(columns[0].trim()), columns[1].trim(),
+                        Double.valueOf(columns[2].trim())));
+            } catch (NumberFormatException e) {
+                result.addError(rowNumber, "Invalid number: " + e.getMessage());
+                continue;
+            }
+            if (batch.size() == batchSize)
+                flush(batch, result);
+        }
+        flush(batch, result);
+        finish(result, start);
+        return result;
+    }
+
+    /**
+     * A JSON array, or whitespace separated objects, of {"studentId", "gradeType", "grade"}.
+     */
+    public ImportResult importJson(InputStream input) throws IOException {
+        long start = System.currentTimeMillis();
+        ImportResult result = new ImportResult();
+        List<GradeImportRow> batch = new ArrayList<>(batchSize);
+        int rowNumber = 0;
+        try (MappingIterator<GradeImportRow> rows = objectMapper.readerFor(GradeImportRow.class).readValues(input)) {
+            while (rows.hasNextValue()) {
+                rowNumber++;
+                GradeImportRow row = rows.nextValue();
+                row.setRowNumber(rowNumber);
+                batch.add(row);
+                if (batch.size() == batchSize)
+                    flush(batch, result);
+            }
+        } catch (IOException e) {
+            // the stream cannot be resumed after malformed JSON, keep what was read so far
+            result.addError(rowNumber + 1, "Invalid JSON: " + e.getMessage());
+        }
+        flush(batch, result);
+        finish(result, start);
+        return result;
+    }
+
+    private void finish(ImportResult result, long start) {
+        if (result.getImported() > 0) {
+            gradeStatistics.invalidate();
+        }
+        result.setElapsedMillis(System.currentTimeMillis() - start);
+    }
+
+    private void flush(List<GradeImportRow> batch, ImportResult result) {
+        if (batch.isEmpty())
+            return;
+
+        Set<Integer> studentIds = batch.stream()
+                .map(GradeImportRow::getStudentId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        Set<Integer> existingIds = studentIds.isEmpty() ? Set.of() : new HashSet<>(studentDao.findExistingIds(studentIds));
+
+        Map<String, List<Object[]>> gradesByType = new HashMap<>();
+        for (GradeImportRow row : batch) {
+            if (row.getStudentId() == null || row.getGradeType() == null || row.getGrade() == null) {
+                result.addError(row.getRowNumber(), "Expected studentId, gradeType and grade");
+            } else if (!existingIds.contains(row.getStudentId())) {
+                result.addError(row.getRowNumber(), "Student " + row.getStudentId() + " does not exist");
+            } else if (!SubjectGrade.SUBJECTS.contains(row.getGradeType())) {
+                result.addError(row.getRowNumber(), "Invalid grade type " + row.getGradeType());
+            } else if (row.getGrade() < 0 || row.getGrade() > 100) {
+                result.addError(row.getRowNumber(), "Grade must be between 0 and 100");
+            } else {
+                gradesByType.computeIfAbsent(row.getGradeType(), type -> new ArrayList<>())
+                        .add(new Object[] {row.getStudentId(), row.getGrade()});
+            }
+        }
+
+        // Hibernate cannot batch IDENTITY inserts, so the rows go through JDBC batching directly
+        gradesByType.forEach((type, grades) -> {
+            jdbc.batchUpdate("INSERT INTO student_grade(subject, student_id, grade) VALUES(?, ?, ?)", grades.stream()
+                    .map(grade -> new Object[] {type, grade[0], grade[1]})
+                    .collect(Collectors.toList()));
+            updateTotals(type, grades);
+            result.addImported(grades.size());
+        });
+        batch.clear();
+    }
+
+    private void updateTotals(String type, List<Object[]> grades) {
+        // count, sum and sum of squares per student
+        Map<Integer, double[]> totals = new HashMap<>();
+        for (Object[] grade : grades) {
+            double value = (Double) grade[1];
+            double[] total = totals.computeIfAbsent((Integer) grade[0], id -> new double[3]);
+            total[0]++;
+            total[1] += value;
+            total[2] += value * value;
+        }
+
+        List<Object[]> updates = new ArrayList<>(totals.size());
+        totals.forEach((studentId, total) -> updates.add(new Object[] {(long) total[0], total[1], total[2], studentId, type}));
+        List<Object[]> missing = addToTotals(updates);
+
+        // totals that did not exist yet, same locking as StudentAndGradeService.addToTotal
+        if (!missing.isEmpty()) {
+            studentDao.lockByIdIn(missing.stream().map(update -> (Integer) update[3]).collect(Collectors.toList()));
+            List<Object[]> inserts = new ArrayList<>();
+            for (Object[] update : addToTotals(missing)) {
+                inserts.add(new Object[] {update[3], update[4], update[0], update[1], update[2]});
+            }
+            if (!inserts.isEmpty()) {
+                jdbc.batchUpdate("INSERT INTO student_grade_total(student_id, subject, grade_count, grade_sum, " +
+                        "grade_sum_squares) VALUES(?, ?, ?, ?, ?)", inserts);
+            }
+        }
+        gradeAverageCache.invalidateAll(totals.keySet());
+    }
+
+    // returns the updates that found no total row
+    private List<Object[]> addToTotals(List<Object[]> updates) {
+        int[] updated = jdbc.batchUpdate("UPDATE student_grade_total SET grade_count = grade_count + ?, " +
+                "grade_sum = grade_sum + ?, grade_sum_squares = grade_sum_squares + ? " +
+                "WHERE student_id = ? AND subject = ?", updates);
+        List<Object[]> missing = new ArrayList<>();
+        for (int i = 0; i < updated.length; i++) {
+            if (updated[i] == 0)
+                missing.add(updates.get(i));
+        }
+        return missing;
+    }
+}
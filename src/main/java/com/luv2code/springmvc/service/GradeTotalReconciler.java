@@ -0,0 +1,156 @@
+package com.luv2code.springmvc.service;
+
+import com.luv2code.springmvc.repository.StudentDao;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Verifies student_grade_total against the student_grade rows and optionally repairs it. Runs on
+ * gradebook.reconcile.cron when that is set, for example nightly.
+ */
+@Component
+public class GradeTotalReconciler {
+
+    private static final Logger log = LoggerFactory.getLogger(GradeTotalReconciler.class);
+
+    private static final String EXPECTED_TOTALS =
+            "SELECT student_id, subject, COUNT(*), SUM(grade), SUM(grade * grade) " +
+            "FROM student_grade GROUP BY student_id, subject";
+
+    // each total recomputed from the grade rows in the statement that writes it
+    private static final String REPAIR_TOTAL =
+            "UPDATE student_grade_total t SET " +
+            "grade_count = (SELECT COUNT(*) FROM student_grade g WHERE g.student_id = t.student_id AND g.subject = t.subject), " +
+            "grade_sum = (SELECT COALESCE(SUM(g.grade), 0) FROM student_grade g WHERE g.student_id = t.student_id AND g.subject = t.subject), " +
+            "grade_sum_squares = (SELECT COALESCE(SUM(g.grade * g.grade), 0) FROM student_grade g " +
+            "WHERE g.student_id = t.student_id AND g.subject = t.subject) " +
+            "WHERE t.student_id = ? AND t.subject = ?";
+
+    private static final String INSERT_TOTAL =
+            "INSERT INTO student_grade_total(student_id, subject, grade_count, grade_sum, grade_sum_squares) " +
+            "SELECT student_id, subject, COUNT(*), SUM(grade), SUM(grade * grade) FROM student_grade " +
+            "WHERE student_id = ? AND subject = ? GROUP BY student_id, subject";
+
+    // ids per IN list of the student locks
+    private static final int LOCK_CHUNK_SIZE = 1000;
+
+    private static final double TOLERANCE = 1e-6;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @Autowired
+    private StudentDao studentDao;
+
+    @Autowired
+    private GradeAverageCache gradeAverageCache;
+
+    @Autowired
+    private GradeStatisticsService gradeStatistics;
+
+    @Scheduled(cron = "${gradebook.reconcile.cron:-}")
+    public void scheduledReconcile() {
+        List<String> mismatches = reconcile(true);
+        log.info("Grade total reconciliation repaired {} totals", mismatches.size());
+    }
+
+    /**
+     * Returns a description of every total that does not match the grade rows.
+     * <p>
+     * The comparison reads a snapshot that concurrent grade writes can move past, so a repair never
+     * writes the snapshot's values. It recomputes each mismatched total from the grade rows in the
+     * same statement that writes it, holding the total's row lock while it does. A concurrent
+     * increment is then either already counted or applied on top once the repair commits. Missing
+     * totals are inserted under the student's lock, like the first grade of a subject.
+     */
+    @Transactional
+    public List<String> reconcile(boolean repair) {
+        Map<String, double[]> expected = new HashMap<>();
+        jdbc.query(EXPECTED_TOTALS, rs -> {
+            expected.put(rs.getInt(1) + ":" + rs.getString(2),
+                    new double[] {rs.getLong(3), rs.getDouble(4), rs.getDouble(5)});
+        });
+
+        List<String> mismatches = new ArrayList<>();
+        List<Object[]> repairs = new ArrayList<>();
+        List<Object[]> stored = new ArrayList<>();
+        jdbc.query("SELECT student_id, subject, grade_count, grade_sum, grade_sum_squares FROM student_grade_total", rs -> {
+            stored.add(new Object[] {rs.getInt(1), rs.getString(2), rs.getLong(3), rs.getDouble(4), rs.getDouble(5)});
+        });
+
+        for (Object[] total : stored) {
+            int studentId = (Integer) total[0];
+            String subject = (String) total[1];
+            double[] actual = {(Long) total[2], (Double) total[3], (Double) total[4]};
+            double[] wanted = expected.remove(studentId + ":" + subject);
+            if (wanted == null)
+                wanted = new double[3];     // total for grades that no longer exist
+            if (!matches(actual, wanted)) {
+                mismatches.add(describe(studentId, subject, actual, wanted));
+                repairs.add(new Object[] {studentId, subject});
+            }
+        }
+
+        // grades without any total row
+        expected.forEach((key, wanted) -> {
+            int studentId = Integer.parseInt(key.substring(0, key.indexOf(':')));
+            String subject = key.substring(key.indexOf(':') + 1);
+            mismatches.add(describe(studentId, subject, new double[3], wanted));
+            repairs.add(new Object[] {studentId, subject});
+        });
+
+        if (repair && !repairs.isEmpty())
+            repair(repairs);
+        for (String mismatch : mismatches) {
+            log.warn("Grade total mismatch: {}", mismatch);
+        }
+        return mismatches;
+    }
+
+    private void repair(List<Object[]> totals) {
+        List<Integer> studentIds = totals.stream()
+                .map(total -> (Integer) total[0])
+                .distinct()
+                .sorted()
+                .collect(Collectors.toList());
+        for (int from = 0; from < studentIds.size(); from += LOCK_CHUNK_SIZE) {
+            studentDao.lockByIdIn(studentIds.subList(from, Math.min(from + LOCK_CHUNK_SIZE, studentIds.size())));
+        }
+
+        int[] updated = jdbc.batchUpdate(REPAIR_TOTAL, totals);
+        List<Object[]> inserts = new ArrayList<>();
+        for (int i = 0; i < updated.length; i++) {
+            if (updated[i] == 0)
+                inserts.add(totals.get(i));
+        }
+        if (!inserts.isEmpty())
+            jdbc.batchUpdate(INSERT_TOTAL, inserts);
+
+        gradeAverageCache.invalidateAll(studentIds);
+        gradeStatistics.invalidate();   // ranks are read from the totals
+    }
+
+    private boolean matches(double[] actual, double[] wanted) {
+        for (int i = 0; i < actual.length; i++) {
+            if (Math.abs(actual[i] - wanted[i]) > TOLERANCE * Math.max(1, Math.abs(wanted[i])))
+                return false;
+        }
+        return true;
+    }
+
+    private String describe(int studentId, String subject, double[] actual, double[] wanted) {
+        return "student " + studentId + " " + subject + ": count " + (long) actual[0] + " sum " + actual[1] +
+                ", expected count " + (long) wanted[0] + " sum " + wanted[1];
+    }
+}
@@ -0,0 +1,242 @@
+package com.luv2code.springmvc.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.luv2code.springmvc.models.GradeBuffer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Writes the whole gradebook, every student with their grades and averages, as CSV or as one JSON
+ * object per line. Rows are read forward only with a fetch size, so only one fetch and the current
+ * student are ever held in memory, and each student is written out as soon as the next one starts.
+ */
+@Service
+public class GradebookExportService {
+
+    public enum Format {CSV, NDJSON}
+
+    private static final String EXPORT_ROWS =
+            "SELECT s.id, s.firstname, s.lastname, s.email_address, g.subject, g.grade " +
+            "FROM student s LEFT JOIN student_grade g ON g.student_id = s.id ORDER BY s.id, g.id";
+
+    private static final List<String> SUBJECTS = List.of("math", "science", "history");
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    // MySQL only honours it with useCursorFetch=true on the connection URL
+    @Value("${gradebook.export.fetch-size:1000}")
+    private int fetchSize;
+
+    private JdbcTemplate cursor;
+
+    private TransactionTemplate readOnly;
+
+    @PostConstruct
+    public void init() {
+        cursor = new JdbcTemplate(jdbc.getDataSource());
+        cursor.setFetchSize(fetchSize);
+        readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+    }
+
+    /**
+     * Writes the export to the stream, which is flushed but not closed. Returns the number of
+     * students written.
+     */
+    public long export(Format format, OutputStream output) throws IOException {
+        StudentWriter writer = format == Format.CSV ? new CsvWriter(output) : new NdjsonWriter(output, objectMapper);
+        StudentRow student = new StudentRow();
+        try {
+            // one read-only transaction, so the export is a consistent snapshot and can use the replica
+            readOnly.executeWithoutResult(status -> cursor.query(EXPORT_ROWS, rs -> {
+                int id = rs.getInt(1);
+                if (id != student.id) {
+                    if (student.id != 0)
+                        write(writer, student);
+                    student.start(id, rs);
+                }
+                String subject = rs.getString(5);
+                int index = subject == null ? -1 : SUBJECTS.indexOf(subject);
+                if (index >= 0)
+                    student.grades[index].add(rs.getDouble(6));
+            }));
+            if (student.id != 0)
+                write(writer, student);
+            writer.finish();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return student.written;
+    }
+
+    private static void write(StudentWriter writer, StudentRow student) {
+        try {
+            writer.write(student);
+            student.written++;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);  // e.g. the client went away, ends the query
+        }
+    }
+
+    // the student being read, reused for every student of the export
+    private static class StudentRow {
+
+        private final GradeBuffer[] grades = {new GradeBuffer(), new GradeBuffer(), new GradeBuffer()};
+
+        private int id;
+
+        private String firstname;
+
+        private String lastname;
+
+        private String emailAddress;
+
+        private long written;
+
+        private void start(int id, ResultSet rs) throws SQLException {
+            this.id = id;
+            this.firstname = rs.getString(2);
+            this.lastname = rs.getString(3);
+            this.emailAddress = rs.getString(4);
+            for (GradeBuffer buffer : grades) {
+                buffer.clear();
+            }
+        }
+    }
+
+    private interface StudentWriter {
+
+        void write(StudentRow student) throws IOException;
+
+        void finish() throws IOException;
+    }
+
+    // id,firstname,lastname,email_address, then an average and the ;-separated grades per subject
+    private static class CsvWriter implements StudentWriter {
+
+        private final Writer out;
+
+        private CsvWriter(OutputStream output) throws IOException {
+            this.out = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8), 8192);
+            out.write("id,firstname,lastname,email_address");
+            for (String subject : SUBJECTS) {
+                out.write("," + subject + "_average");
+            }
+            for (String subject : SUBJECTS) {
+                out.write("," + subject + "_grades");
+            }
+            out.write('\n');
+        }
+
+        @Override
+        public void write(StudentRow student) throws IOException {
+            out.write(Integer.toString(student.id));
+            field(student.firstname);
+            field(student.lastname);
+            field(student.emailAddress);
+            for (GradeBuffer grades : student.grades) {
+                out.write(',');
+                if (!grades.isEmpty())
+                    out.write(Double.toString(grades.average()));
+            }
+            for (GradeBuffer grades : student.grades) {
+                out.write(',');
+                for (int i = 0; i < grades.size(); i++) {
+                    if (i > 0)
+                        out.write(';');
+                    out.write(Double.toString(grades.get(i)));
+                }
+            }
+            out.write('\n');
+        }
+
+        private void field(String value) throws IOException {
+            out.write(',');
+            if (value == null)
+                return;
+            if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+                out.write(value);
+            } else {
+                out.write('"');
+                out.write(value.replace("\"", "\"\""));
+                out.write('"');
+            }
+        }
+
+        @Override
+        public void finish() throws IOException {
+            out.flush();
+        }
+    }
+
+    // {"id", "firstname", "lastname", "emailAddress", "grades": {subject: [...]}, "averages": {subject: n or null}}
+    private static class NdjsonWriter implements StudentWriter {
+
+        private final JsonGenerator json;
+
+        private NdjsonWriter(OutputStream output, ObjectMapper objectMapper) throws IOException {
+            this.json = objectMapper.getFactory().createGenerator(output);
+            json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        }
+
+        @Override
+        public void write(StudentRow student) throws IOException {
+            json.writeStartObject();
+            json.writeNumberField("id", student.id);
+            json.writeStringField("firstname", student.firstname);
+            json.writeStringField("lastname", student.lastname);
+            json.writeStringField("emailAddress", student.emailAddress);
+            json.writeObjectFieldStart("grades");
+            for (int s = 0; s < SUBJECTS.size(); s++) {
+                GradeBuffer grades = student.grades[s];
+                json.writeArrayFieldStart(SUBJECTS.get(s));
+                for (int i = 0; i < grades.size(); i++) {
+                    json.writeNumber(grades.get(i));
+                }
+                json.writeEndArray();
+            }
+            json.writeEndObject();
+            json.writeObjectFieldStart("averages");
+            for (int s = 0; s < SUBJECTS.size(); s++) {
+                GradeBuffer grades = student.grades[s];
+                if (grades.isEmpty()) {
+                    json.writeNullField(SUBJECTS.get(s));
+                } else {
+                    json.writeNumberField(SUBJECTS.get(s), grades.average());
+                }
+            }
+            json.writeEndObject();
+            json.writeEndObject();
+            json.writeRaw('\n');
+        }
+
+        @Override
+        public void finish() throws IOException {
+            json.flush();
+        }
+    }
+}
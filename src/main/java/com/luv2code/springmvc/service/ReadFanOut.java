@@ -0,0 +1,88 @@
+package com.luv2code.springmvc.service;
+
+import com.luv2code.springmvc.config.StatementLog;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Runs independent reads of one request concurrently, each on its own connection in a read-only
+ * transaction. Enabled with gradebook.fan-out.enabled=true.
+ * <p>
+ * It never makes a request fail that would have worked sequentially: when all threads are busy
+ * the caller runs the read itself, and when a forked read has not finished within
+ * gradebook.fan-out.wait-ms, e.g. because the connection pool is exhausted, the caller cancels it
+ * and runs it in its own transaction.
+ * <p>
+ * A forked read does not share the caller's transaction, so it reads a different snapshot: a
+ * write that commits between the two can show in one result and not the other. Callers that
+ * combine the results check them against each other, see StudentAndGradeService.
+ */
+@Component
+@ConditionalOnProperty(name = "gradebook.fan-out.enabled", havingValue = "true")
+public class ReadFanOut implements DisposableBean {
+
+    private final ThreadPoolExecutor executor;
+
+    private final TransactionTemplate readOnly;
+
+    private final long waitMillis;
+
+    public ReadFanOut(PlatformTransactionManager transactionManager,
+                      @Value("${gradebook.fan-out.threads:8}") int threads,
+                      @Value("${gradebook.fan-out.wait-ms:1000}") long waitMillis) {
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new SynchronousQueue<>(),
+                new CustomizableThreadFactory("fan-out-"), new ThreadPoolExecutor.CallerRunsPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+        this.readOnly = new TransactionTemplate(transactionManager);
+        this.readOnly.setReadOnly(true);
+        this.waitMillis = waitMillis;
+    }
+
+    /**
+     * Starts the read on another thread. When the caller runs it instead, it joins the caller's
+     * transaction, so a caller never waits for a second connection. Its statements count toward
+     * the caller's StatementLog either way.
+     */
+    public <T> Future<T> fork(Supplier<T> read) {
+        StatementLog statements = StatementLog.current();
+        return executor.submit(() -> StatementLog.recordInto(statements, () -> readOnly.execute(status -> read.get())));
+    }
+
+    /**
+     * The result of a forked read, or of running it here once waiting took longer than allowed.
+     */
+    public <T> T join(Future<T> forked, Supplier<T> read) {
+        try {
+            return forked.get(waitMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            forked.cancel(true);
+            return read.get();
+        } catch (InterruptedException e) {
+            forked.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for a forked read", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+}
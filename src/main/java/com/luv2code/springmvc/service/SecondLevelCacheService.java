@@ -0,0 +1,52 @@
+package com.luv2code.springmvc.service;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Statistics of the hibernate second-level cache next to the grade average cache.
+ */
+@Service
+public class SecondLevelCacheService {
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private GradeAverageCache gradeAverageCache;
+
+    public void evictAll() {
+        sessionFactory().getCache().evictAllRegions();
+        gradeAverageCache.clear();
+    }
+
+    public Map<String, Object> getStatistics() {
+        Statistics statistics = sessionFactory().getStatistics();
+        Map<String, Object> regions = new LinkedHashMap<>();
+        for (String regionName : statistics.getSecondLevelCacheRegionNames()) {
+            CacheRegionStatistics region = statistics.getCacheRegionStatistics(regionName);
+            if (region != null) {
+                regions.put(regionName, Map.of("hits", region.getHitCount(), "misses", region.getMissCount(),
+                        "puts", region.getPutCount(), "size", region.getElementCountInMemory()));
+            }
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("statisticsEnabled", statistics.isStatisticsEnabled());
+        result.put("regions", regions);
+        result.put("gradeAverages", Map.of("hits", gradeAverageCache.getHits(), "misses", gradeAverageCache.getMisses(),
+                "evictions", gradeAverageCache.getEvictions(), "size", gradeAverageCache.size()));
+        return result;
+    }
+
+    private SessionFactory sessionFactory() {
+        return entityManagerFactory.unwrap(SessionFactory.class);
+    }
+}
@@ -1,178 +1,311 @@
 package com.luv2code.springmvc.service;
 
 import com.luv2code.springmvc.models.*;
-import com.luv2code.springmvc.repository.HistoryGradeDao;
-import com.luv2code.springmvc.repository.MathGradeDao;
-import com.luv2code.springmvc.repository.ScienceGradeDao;
+import com.luv2code.springmvc.repository.GradeDao;
 import com.luv2code.springmvc.repository.StudentDao;
+import com.luv2code.springmvc.repository.StudentGradeTotalDao;
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.ui.Model;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 @Service
 @Transactional  // Allows SpringBoot manage transaction for us in the background
+// Reads are readOnly: hibernate skips dirty checking and flushing, and with a replica configured
+// they are served by it (see ReplicaRoutingDataSource)
 public class StudentAndGradeService {
 
-    @Autowired
-    private StudentDao studentDao;
+    // ids per IN list of a bulk delete
+    private static final int DELETE_CHUNK_SIZE = 1000;
 
-    @Autowired
-    private MathGradeDao mathGradeDao;
+    private static final String SERVICE_TIMER = "gradebook.service";
 
     @Autowired
-    private ScienceGradeDao scienceGradeDao;
+    private StudentDao studentDao;
 
     @Autowired
-    private HistoryGradeDao historyGradeDao;
+    private GradeDao gradeDao;
 
     @Autowired
-    @Qualifier("mathGrades")
-    private MathGrade mathGrade;    // we use the mathGrade bean defined in the MvcTestingExampleApplication
+    private StudentGradeTotalDao studentGradeTotalDao;
 
     @Autowired
-    @Qualifier("scienceGrades")
-    private ScienceGrade scienceGrade;
+    private GradeAverageCache gradeAverageCache;
 
     @Autowired
-    @Qualifier("historyGrades")
-    private HistoryGrade historyGrade;
+    private GradeStatisticsService gradeStatistics;
 
     @Autowired
-    private StudentGrades studentGrades;
+    private MeterRegistry meterRegistry;
 
+    // only there with gradebook.fan-out.enabled=true
+    @Autowired(required = false)
+    private ReadFanOut readFanOut;
+
+    @Timed(SERVICE_TIMER)
     public void createStudent(String firstname, String lastname, String email) {
         CollegeStudent student = new CollegeStudent(firstname, lastname, email);
         student.setId(0);
         studentDao.save(student);
     }
 
+    @Transactional(readOnly = true)
+    @Timed(SERVICE_TIMER)
     public boolean checkIfStudentIsNull(int id) {
         return !studentDao.existsById(id);
     }
 
-    public void deleteStudent(int id) {
-        if (!checkIfStudentIsNull(id)) {
-            studentDao.deleteById(id);
-            mathGradeDao.deleteByStudentId(id);
-            historyGradeDao.deleteByStudentId(id);
-            scienceGradeDao.deleteByStudentId(id);
-        }
+    // returns false when there was no such student
+    @Timed(SERVICE_TIMER)
+    public boolean deleteStudent(int id) {
+        return deleteStudents(List.of(id)) > 0;
+    }
 
+    /**
+     * Removes the students together with their grades and totals, three bulk deletes per chunk of
+     * ids and nothing loaded into the persistence context. Returns how many of the students existed.
+     */
+    @Timed(SERVICE_TIMER)
+    public int deleteStudents(Collection<Integer> ids) {
+        List<Integer> uniqueIds = new ArrayList<>(new LinkedHashSet<>(ids));
+        int deleted = 0;
+        for (int from = 0; from < uniqueIds.size(); from += DELETE_CHUNK_SIZE) {
+            List<Integer> chunk = uniqueIds.subList(from, Math.min(from + DELETE_CHUNK_SIZE, uniqueIds.size()));
+            gradeDao.deleteByStudentIdIn(chunk);
+            studentGradeTotalDao.deleteByStudentIdIn(chunk);
+            deleted += studentDao.deleteByIdIn(chunk);
+        }
+        gradeAverageCache.invalidateAll(new HashSet<>(uniqueIds));
+        gradeStatistics.invalidate();
+        return deleted;
     }
 
+    @Transactional(readOnly = true)
+    @Timed(SERVICE_TIMER)
     public Iterable<CollegeStudent> getGradebook() {
         Iterable<CollegeStudent> collegeStudents = studentDao.findAll();
         return collegeStudents;
     }
 
+    /**
+     * One page of the roster, starting after the given student. Sorted by id, or by last name
+     * when sort is "lastname", in which case afterLastname is the last name of that student.
+     */
+    @Transactional(readOnly = true)
+    @Timed(SERVICE_TIMER)
+    public List<CollegeStudent> getGradebookPage(int afterId, String afterLastname, String sort, int size) {
+        PageRequest page = PageRequest.ofSize(size);
+        if (sort.equals("lastname"))
+            return studentDao.findPageOrderByLastname(afterLastname, afterId, page);
+        return studentDao.findByIdGreaterThanOrderByIdAsc(afterId, page);
+    }
+
+    @Transactional(readOnly = true)
+    @Timed(SERVICE_TIMER)
+    public List<StudentSummary> getStudentSummaries(int afterId, int size) {
+        return studentDao.findSummariesByIdGreaterThanOrderByIdAsc(afterId, PageRequest.ofSize(size));
+    }
+
+    @Transactional(readOnly = true)
+    @Timed(SERVICE_TIMER)
+    public Optional<StudentSummary> getStudentSummary(int id) {
+        return studentDao.findSummaryById(id);
+    }
+
+    // empty when there is no such student, the existence is only looked up when there are no grades
+    @Transactional(readOnly = true)
+    @Timed(SERVICE_TIMER)
+    public Optional<List<GradeView>> getStudentGrades(int studentId) {
+        List<GradeView> grades = gradeDao.findViewsByStudentId(studentId);
+        if (grades.isEmpty() && !studentDao.existsById(studentId))
+            return Optional.empty();
+        return Optional.of(grades);
+    }
+
+    @Transactional(readOnly = true)
+    @Timed(SERVICE_TIMER)
+    public List<GradeView> getGrades(int afterId, int size) {
+        return gradeDao.findViewsAfter(afterId, PageRequest.ofSize(size));
+    }
+
+    // false when the grade is invalid or there is no such student
+    @Timed(SERVICE_TIMER)
     public boolean createGrade(double grade, int studentId, String type) {
+        boolean created = insertGrade(grade, studentId, type);
+        countGradeWrite("create", type, created);
+        return created;
+    }
+
+    private boolean insertGrade(double grade, int studentId, String type) {
 
-        if (checkIfStudentIsNull(studentId))
+        if (grade < 0 || grade > 100)
             return false;
 
-        if (grade >= 0 && grade <= 100) {
-            if (type.equals("math")) {
-                mathGrade.setId(0);
-                mathGrade.setGrade(grade);
-                mathGrade.setStudentId(studentId);
-                mathGradeDao.save(mathGrade);
-                return true;
-            } else if (type.equals("science")) {
-                scienceGrade.setId(0);
-                scienceGrade.setGrade(grade);
-                scienceGrade.setStudentId(studentId);
-                scienceGradeDao.save(scienceGrade);
-                return true;
-            } else if (type.equals("history")){
-                historyGrade.setId(0);
-                historyGrade.setGrade(grade);
-                historyGrade.setStudentId(studentId);
-                historyGradeDao.save(historyGrade);
-                return true;
-            }
-        }
-        return false;
+        if (!SubjectGrade.SUBJECTS.contains(type))
+            return false;
+
+        if (gradeDao.insertForStudent(studentId, type, grade) == 0)
+            return false;
+        addToTotal(studentId, type, grade);
+        return true;
     }
 
+    @Timed(SERVICE_TIMER)
     public int deleteGrade(int gradeId, String type) {
-        int studentId = 0;
+        Optional<SubjectGrade> gradeOptional = gradeDao.findById(gradeId);
+        if (gradeOptional.isEmpty() || !gradeOptional.get().getSubject().equals(type)) {
+            countGradeWrite("delete", type, false);
+            return 0;
+        }
 
-        if (type.equals("math")) {
-            Optional<MathGrade> gradeOptional = mathGradeDao.findById(gradeId);
-            if (gradeOptional.isPresent()) {
-                studentId = gradeOptional.get().getStudentId();
-                mathGradeDao.deleteById(gradeId);
-            }
-        } else if (type.equals("history")){
-            Optional<HistoryGrade> gradeOptional = historyGradeDao.findById(gradeId);
-            if (gradeOptional.isPresent()) {
-                studentId = gradeOptional.get().getStudentId();
-                historyGradeDao.deleteById(gradeId);
-            }
-        } else if (type.equals("science")){
-            Optional<ScienceGrade> gradeOptional = scienceGradeDao.findById(gradeId);
-            if (gradeOptional.isPresent()) {
-                studentId = gradeOptional.get().getStudentId();
-                scienceGradeDao.deleteById(gradeId);
-            }
+        SubjectGrade grade = gradeOptional.get();
+        gradeDao.delete(grade);
+        removeFromTotal(grade.getStudentId(), type, grade.getGrade());
+        countGradeWrite("delete", type, true);
+        return grade.getStudentId();
+    }
+
+    // gradebook.grades{operation, subject, outcome}, unknown subjects share one tag value
+    private void countGradeWrite(String operation, String subject, boolean success) {
+        meterRegistry.counter("gradebook.grades", "operation", operation,
+                "subject", SubjectGrade.SUBJECTS.contains(subject) ? subject : "other",
+                "outcome", success ? "success" : "error").increment();
+    }
+
+    private void addToTotal(int studentId, String subject, double grade) {
+        // first grade of the subject: under the student's lock a concurrent first grade has either
+        // committed its total, which the second update then finds, or waits for this one
+        if (studentGradeTotalDao.addGrade(studentId, subject, grade) == 0) {
+            studentDao.lockByIdIn(List.of(studentId));
+            if (studentGradeTotalDao.addGrade(studentId, subject, grade) == 0)
+                studentGradeTotalDao.save(new StudentGradeTotal(studentId, subject, 1, grade, grade * grade));
         }
-        return studentId;
+        gradeAverageCache.addGrade(studentId, subject, grade);
+        gradeStatistics.addGrade(studentId, subject, grade);
     }
 
+    private void removeFromTotal(int studentId, String subject, double grade) {
+        studentGradeTotalDao.removeGrade(studentId, subject, grade);
+        gradeAverageCache.removeGrade(studentId, subject, grade);
+        gradeStatistics.removeGrade(studentId, subject, grade);
+    }
+
+    @Transactional(readOnly = true)
+    @Timed(SERVICE_TIMER)
     public GradebookCollegeStudent studentInformation(int studentId) {
-        Optional<CollegeStudent> studentOptional = studentDao.findById(studentId);
-        if (studentOptional.isEmpty())
+        List<StudentGradeRow> rows = studentDao.findStudentWithGrades(studentId);
+        if (rows.isEmpty())
             return null;
-        CollegeStudent student = studentOptional.get();
-        Iterable<MathGrade> mathGradesIter = mathGradeDao.findGradeByStudentId(studentId);
-        Iterable<ScienceGrade> scienceGradesIter = scienceGradeDao.findGradeByStudentId(studentId);
-        Iterable<HistoryGrade> historyGradesIter = historyGradeDao.findGradeByStudentId(studentId);
+        StudentGradeRow student = rows.get(0);
         List<Grade> mathGrades = new ArrayList<>();
         List<Grade> historyGrades = new ArrayList<>();
         List<Grade> scienceGrades = new ArrayList<>();
-        mathGradesIter.forEach(mathGrades::add);
-        scienceGradesIter.forEach(scienceGrades::add);
-        historyGradesIter.forEach(historyGrades::add);
+        for (StudentGradeRow row : rows) {
+            if (row.getGradeId() == null)
+                continue;   // student without any grade
+            SubjectGrade grade = SubjectGrade.create(row.getSubject(), row.getGrade());
+            if (grade == null)
+                continue;   // a subject this page does not show
+            grade.setId(row.getGradeId());
+            grade.setStudentId(studentId);
+            if (grade instanceof MathGrade) {
+                mathGrades.add(grade);
+            } else if (grade instanceof ScienceGrade) {
+                scienceGrades.add(grade);
+            } else {
+                historyGrades.add(grade);
+            }
+        }
 
-        studentGrades.setMathGradeResults(mathGrades);
-        studentGrades.setHistoryGradeResults(historyGrades);
-        studentGrades.setScienceGradeResults(scienceGrades);
+        StudentGrades studentGrades = new StudentGrades(mathGrades, scienceGrades, historyGrades);
 
-        GradebookCollegeStudent gradebookCollegeStudent = new GradebookCollegeStudent(student.getId(), student.getFirstname(),
+        GradebookCollegeStudent gradebookCollegeStudent = new GradebookCollegeStudent(student.getStudentId(), student.getFirstname(),
                 student.getLastname(), student.getEmailAddress(), studentGrades);
 
         return gradebookCollegeStudent;
     }
 
-    public void configureStudentInformationModel(int id, Model m) {
+    // false when there is no such student, the model is left untouched then
+    @Transactional(readOnly = true)
+    @Timed(SERVICE_TIMER)
+    public boolean configureStudentInformationModel(int id, Model m) {
+        return populateStudentInformationModel(id, m, true);
+    }
+
+    // The page shown right after a write: read-write, so it is read from the primary. A lagging
+    // replica could miss the write, and the averages it returned would go into the cache.
+    // No fan-out either, forked reads are read-only and so go to the replica.
+    @Timed(SERVICE_TIMER)
+    public boolean configureStudentInformationModelAfterWrite(int id, Model m) {
+        return populateStudentInformationModel(id, m, false);
+    }
+
+    private boolean populateStudentInformationModel(int id, Model m, boolean fanOut) {
+
+        // averages come from the running totals, never from summing the grade rows
+        Supplier<Map<String, GradeAggregate>> averages = () -> gradeAverageCache.get(id, () -> studentGradeTotalDao.findByStudentId(id)
+                .stream()
+                .collect(Collectors.toMap(StudentGradeTotal::getSubject, StudentGradeTotal::toAggregate)));
+
+        // on a cache miss the totals are read while the student's grades are
+        Future<Map<String, GradeAggregate>> forked = null;
+        if (fanOut && readFanOut != null && !gradeAverageCache.contains(id))
+            forked = readFanOut.fork(averages);
 
         GradebookCollegeStudent student = studentInformation(id);
-        m.addAttribute("student", student);
-        if (!student.getStudentGrades().getMathGradeResults().isEmpty()) {
-            m.addAttribute("mathAverage", student.getStudentGrades().findGradePointAverage(
-                    student.getStudentGrades().getMathGradeResults()));
-        } else {
-            m.addAttribute("mathAverage", "N/A");
+        if (student == null) {
+            if (forked != null)
+                forked.cancel(true);
+            return false;
         }
+        m.addAttribute("student", student);
 
-        if (!student.getStudentGrades().getScienceGradeResults().isEmpty()) {
-            m.addAttribute("scienceAverage", student.getStudentGrades().findGradePointAverage(
-                    student.getStudentGrades().getScienceGradeResults()));
-        } else {
-            m.addAttribute("scienceAverage", "N/A");
-        }
+        Map<String, GradeAggregate> aggregates = forked != null
+                ? consistentWith(student.getStudentGrades(), readFanOut.join(forked, averages))
+                : averages.get();
+
+        addAverage(m, "math", aggregates.get("math"));
+        addAverage(m, "science", aggregates.get("science"));
+        addAverage(m, "history", aggregates.get("history"));
+        return true;
+    }
+
+    // The forked totals are read in a transaction of their own, a grade write committed between the
+    // two reads shows in one and not the other. Where the count disagrees with the grades on the
+    // page, the page's grades are summed instead, so the page agrees with itself.
+    private static Map<String, GradeAggregate> consistentWith(StudentGrades grades, Map<String, GradeAggregate> aggregates) {
+        Map<String, GradeAggregate> checked = new HashMap<>(aggregates);
+        Map.of("math", grades.getMathGradeResults(),
+                "science", grades.getScienceGradeResults(),
+                "history", grades.getHistoryGradeResults()).forEach((subject, shown) -> {
+            if (aggregates.getOrDefault(subject, GradeAggregate.EMPTY).getCount() != shown.size())
+                checked.put(subject, GradeAggregate.of(shown));
+        });
+        return checked;
+    }
 
-        if (!student.getStudentGrades().getHistoryGradeResults().isEmpty()) {
-            m.addAttribute("historyAverage", student.getStudentGrades().findGradePointAverage(
-                    student.getStudentGrades().getHistoryGradeResults()));
+    // <subject>Average, and <subject>Rank when the student has grades in the subject
+    private void addAverage(Model m, String subject, GradeAggregate aggregate) {
+        if (aggregate != null && !aggregate.isEmpty()) {
+            m.addAttribute(subject + "Average", aggregate.getAverage());
+            m.addAttribute(subject + "Rank", gradeStatistics.getClassRank(subject, aggregate.getSum() / aggregate.getCount()));
         } else {
-            m.addAttribute("historyAverage", "N/A");
+            m.addAttribute(subject + "Average", "N/A");
         }
     }
 }
@@ -0,0 +1,124 @@
+package com.luv2code.springmvc.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.luv2code.springmvc.models.CollegeStudent;
+import com.luv2code.springmvc.models.ImportResult;
+import com.luv2code.springmvc.repository.StudentDao;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Imports students line by line, so only one batch is held in memory. Email addresses are
+ * deduplicated per batch against the batch itself and, with one query, against the database.
+ */
+@Service
+@Transactional
+public class StudentImportService {
+
+    @Autowired
+    private StudentDao studentDao;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${gradebook.import.batch-size:1000}")
+    private int batchSize;
+
+    /**
+     * Rows of firstname,lastname,emailAddress with an optional header line.
+     */
+    public ImportResult importCsv(Reader reader) throws IOException {
+        return importLines(reader, false);
+    }
+
+    /**
+     * One {"firstname", "lastname", "emailAddress"} object per line.
+     */
+    public ImportResult importJsonLines(Reader reader) throws IOException {
+        return importLines(reader, true);
+    }
+
+    private ImportResult importLines(Reader reader, boolean json) throws IOException {
+        long start = System.currentTimeMillis();
+        ImportResult result = new ImportResult();
+        Map<String, CollegeStudent> batch = new LinkedHashMap<>();
+        BufferedReader lines = new BufferedReader(reader);
+        String line;
+        int rowNumber = 0;
+        while ((line = lines.readLine()) != null) {
+            rowNumber++;
+            if (line.isBlank() || (!json && rowNumber == 1 && line.startsWith("firstname")))
+                continue;
+
+            CollegeStudent student = json ? parseJson(line) : parseCsv(line);
+            if (student == null || isBlank(student.getFirstname()) || isBlank(student.getLastname())
+                    || isBlank(student.getEmailAddress())) {
+                result.addError(rowNumber, "Expected firstname, lastname and emailAddress");
+                continue;
+            }
+            if (batch.putIfAbsent(student.getEmailAddress(), student) != null) {
+                result.addSkipped(1);   // same email earlier in this batch
+                continue;
+            }
+            if (batch.size() == batchSize)
+                flush(batch, result);
+        }
+        flush(batch, result);
+        result.setElapsedMillis(System.currentTimeMillis() - start);
+        return result;
+    }
+
+    private CollegeStudent parseCsv(String line) {
+        String[] columns = line.split(",");
+        if (columns.length != 3)
+            return null;
+        return new CollegeStudent(columns[0].trim(), columns[1].trim(), columns[2].trim());
+    }
+
+    private CollegeStudent parseJson(String line) {
+        try {
+            CollegeStudent student = objectMapper.readValue(line, CollegeStudent.class);
+            if (student.getEmailAddress() != null)
+                student.setEmailAddress(student.getEmailAddress().trim());
+            return student;
+        } catch (JsonProcessingException e) {
+            return null;
+        }
+    }
+
+    private boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+
+    private void flush(Map<String, CollegeStudent> batch, ImportResult result) {
+        if (batch.isEmpty())
+            return;
+
+        // earlier batches are already inserted in this transaction, so this also catches duplicates across batches
+        for (String existing : studentDao.findExistingEmailAddresses(batch.keySet())) {
+            batch.remove(existing);
+            result.addSkipped(1);
+        }
+
+        // ids stay IDENTITY generated: the database assigns them, so nothing keeps JDBC from batching
+        List<Object[]> rows = batch.values().stream()
+                .map(student -> new Object[] {student.getFirstname(), student.getLastname(), student.getEmailAddress()})
+                .collect(Collectors.toList());
+        jdbc.batchUpdate("INSERT INTO student(firstname, lastname, email_address) VALUES(?, ?, ?)", rows);
+        result.addImported(rows.size());
+        batch.clear();
+    }
+}
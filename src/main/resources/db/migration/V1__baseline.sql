@@ -0,0 +1,27 @@
+-- Schema as hibernate's ddl-auto created it before grades moved into one table. Existing
+-- databases are baselined at this version (spring.flyway.baseline-on-migrate) and pick up
+-- every later script.
+CREATE TABLE student (
+    id INT AUTO_INCREMENT PRIMARY KEY,
+    firstname VARCHAR(255),
+    lastname VARCHAR(255),
+    email_address VARCHAR(255)
+);
+
+CREATE TABLE math_grade (
+    id INT AUTO_INCREMENT PRIMARY KEY,
+    student_id INT NOT NULL,
+    grade DOUBLE NOT NULL
+);
+
+CREATE TABLE science_grade (
+    id INT AUTO_INCREMENT PRIMARY KEY,
+    student_id INT NOT NULL,
+    grade DOUBLE NOT NULL
+);
+
+CREATE TABLE history_grade (
+    id INT AUTO_INCREMENT PRIMARY KEY,
+    student_id INT NOT NULL,
+    grade DOUBLE NOT NULL
+);
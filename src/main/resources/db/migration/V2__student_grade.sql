@@ -0,0 +1,17 @@
+-- Grades of every subject in one table, subject is the discriminator.
+CREATE TABLE student_grade (
+    id INT AUTO_INCREMENT PRIMARY KEY,
+    subject VARCHAR(31) NOT NULL,
+    student_id INT NOT NULL,
+    grade DOUBLE NOT NULL
+);
+CREATE INDEX idx_student_grade_student_subject ON student_grade (student_id, subject);
+
+-- Grade ids are renumbered since the three tables had overlapping ids.
+INSERT INTO student_grade (subject, student_id, grade) SELECT 'math', student_id, grade FROM math_grade ORDER BY id;
+INSERT INTO student_grade (subject, student_id, grade) SELECT 'science', student_id, grade FROM science_grade ORDER BY id;
+INSERT INTO student_grade (subject, student_id, grade) SELECT 'history', student_id, grade FROM history_grade ORDER BY id;
+
+DROP TABLE math_grade;
+DROP TABLE science_grade;
+DROP TABLE history_grade;
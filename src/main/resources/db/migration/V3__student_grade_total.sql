@@ -0,0 +1,15 @@
+-- Running count, sum and sum of squares per student and subject, filled from the grades so far.
+CREATE TABLE student_grade_total (
+    id INT AUTO_INCREMENT PRIMARY KEY,
+    student_id INT NOT NULL,
+    subject VARCHAR(255),
+    grade_count BIGINT NOT NULL,
+    grade_sum DOUBLE NOT NULL,
+    grade_sum_squares DOUBLE NOT NULL,
+    CONSTRAINT uk_student_grade_total UNIQUE (student_id, subject)
+);
+
+INSERT INTO student_grade_total (student_id, subject, grade_count, grade_sum, grade_sum_squares)
+SELECT student_id, subject, COUNT(*), SUM(grade), SUM(grade * grade)
+FROM student_grade
+GROUP BY student_id, subject;
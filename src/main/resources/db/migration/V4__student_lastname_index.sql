@@ -0,0 +1,2 @@
+-- Roster pages sorted by last name seek on (lastname, id).
+CREATE INDEX idx_student_lastname_id ON student (lastname, id);
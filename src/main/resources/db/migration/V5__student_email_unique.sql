@@ -0,0 +1,3 @@
+-- findByEmailAddress and the student import's duplicate check look students up by email.
+-- Remove duplicate emails before running this against an existing database.
+ALTER TABLE student ADD CONSTRAINT uk_student_email_address UNIQUE (email_address);
@@ -1,3 +1,3 @@
-INSERT INTO student(id, firstname, lastname, email_address) VALUES(2, 'Rick', 'Norman', 'rick.norman@luv2code.com');
+INSERT INTO student(id, firstname, lastname, email_address) VALUES(2, 'Rick', 'Norman', 'rick.norman.jr@luv2code.com');
 INSERT INTO student(id, firstname, lastname, email_address) VALUES(3, 'John', 'Well', 'john.well@luv2code.com');
 INSERT INTO student(id, firstname, lastname, email_address) VALUES(4, 'Thomas', 'Janes', 'thomas.janes@luv2code.com');
\ No newline at end of file
@@ -0,0 +1,74 @@
+package com.luv2code.springmvc;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// gzip is negotiated by the servlet container, so this goes through a real port. The JDK client
+// never decompresses on its own, the Content-Encoding it sees is the server's
+@TestPropertySource("/application-test.properties")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class ExportCompressionTest {
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @BeforeEach
+    public void setupDatabase() {
+        // well over server.compression.min-response-size
+        jdbc.execute("INSERT INTO student(id, firstname, lastname, email_address) " +
+                "SELECT X, 'First' || X, 'Last' || X, 'student' || X || '@luv2code.com' FROM SYSTEM_RANGE(1, 500)");
+    }
+
+    @Test
+    public void exportIsGzippedWhenAccepted() throws Exception {
+        HttpResponse<InputStream> gzipped = export("gzip");
+        assertEquals(200, gzipped.statusCode());
+        assertEquals("gzip", gzipped.headers().firstValue("Content-Encoding").orElse(null));
+        String csv;
+        try (InputStream body = new GZIPInputStream(gzipped.body())) {
+            csv = new String(body.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        assertEquals(501, csv.split("\n").length, "Header and one line per student");
+
+        HttpResponse<InputStream> plain = export(null);
+        assertEquals(200, plain.statusCode());
+        assertTrue(plain.headers().firstValue("Content-Encoding").isEmpty());
+        try (InputStream body = plain.body()) {
+            assertEquals(csv, new String(body.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    private HttpResponse<InputStream> export(String acceptEncoding) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/export"));
+        if (acceptEncoding != null)
+            request.header("Accept-Encoding", acceptEncoding);
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+    }
+
+    @AfterEach
+    public void cleanupDatabase() {
+        jdbc.execute("DELETE FROM student");
+    }
+}
@@ -1,10 +1,18 @@
 package com.luv2code.springmvc;
 
+import com.luv2code.springmvc.config.StatementLog;
+import com.luv2code.springmvc.controller.GradebookController;
+import com.luv2code.springmvc.controller.StatementBudgetInterceptor;
 import com.luv2code.springmvc.models.CollegeStudent;
+import com.luv2code.springmvc.models.Grade;
 import com.luv2code.springmvc.models.GradebookCollegeStudent;
 import com.luv2code.springmvc.repository.MathGradeDao;
 import com.luv2code.springmvc.repository.StudentDao;
+import com.luv2code.springmvc.service.GradeAverageCache;
+import com.luv2code.springmvc.service.GradeStatisticsService;
 import com.luv2code.springmvc.service.StudentAndGradeService;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
@@ -17,22 +25,34 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.web.ModelAndViewAssert;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.ui.Model;
+import org.springframework.web.method.HandlerMethod;
 import org.springframework.web.servlet.ModelAndView;
 
+import javax.persistence.EntityManagerFactory;
 import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.mockito.Mockito.when;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @TestPropertySource("/application-test.properties")
@@ -60,6 +80,18 @@ public class GradebookControllerTest {
     @Autowired
     private MathGradeDao mathGradesDao;
 
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private GradeAverageCache gradeAverageCache;
+
+    @Autowired
+    private GradeStatisticsService gradeStatistics;
+
+    @Autowired
+    private GradebookController gradebookController;
+
     @Value("${sql.script.insert.student}")
     private String sqlInsertStudent;
 
@@ -84,6 +116,12 @@ public class GradebookControllerTest {
     @Value("${sql.script.delete.history.grade}")
     private String sqlDeleteHistoryGrade;
 
+    @Value("${sql.script.insert.grade.total}")
+    private String sqlInsertGradeTotal;
+
+    @Value("${sql.script.delete.grade.total}")
+    private String sqlDeleteGradeTotal;
+
     @BeforeAll
     public static void setup() {
         request = new MockHttpServletRequest();
@@ -94,10 +132,13 @@ public class GradebookControllerTest {
 
     @BeforeEach
     public void beforeEach() {
+        gradeAverageCache.clear();
+        gradeStatistics.invalidate();
         jdbc.execute(sqlInsertStudent);
         jdbc.execute(sqlInsertMathGrade);
         jdbc.execute(sqlInsertScienceGrade);
         jdbc.execute(sqlInsertHistoryGrade);
+        jdbc.execute(sqlInsertGradeTotal);
     }
 
     @AfterEach
@@ -106,6 +147,7 @@ public class GradebookControllerTest {
         jdbc.execute(sqlDeleteMathGrade);
         jdbc.execute(sqlDeleteScienceGrade);
         jdbc.execute(sqlDeleteHistoryGrade);
+        jdbc.execute(sqlDeleteGradeTotal);
     }
 
     /**
@@ -137,6 +179,29 @@ public class GradebookControllerTest {
         ModelAndViewAssert.assertViewName(mav, "index");
     }
 
+    @Test
+    public void getStudentPageHttpRequest() throws Exception {
+
+        jdbc.execute("INSERT INTO student(id, firstname, lastname, email_address) " +
+                "VALUES(2, 'Eric', 'Roby', 'eric.roby@luv2code.com')");
+
+        MvcResult mvcResult = mockMvc.perform(get("/").param("size", "1"))
+                .andExpect(status().isOk()).andReturn();
+
+        ModelAndView mav = mvcResult.getModelAndView();
+        ModelAndViewAssert.assertViewName(mav, "index");
+        ModelAndViewAssert.assertModelAttributeValue(mav, "nextAfter", 1);
+
+        mvcResult = mockMvc.perform(get("/").param("size", "1").param("after", "1"))
+                .andExpect(status().isOk()).andReturn();
+
+        mav = mvcResult.getModelAndView();
+        ModelAndViewAssert.assertModelAttributeAvailable(mav, "students");
+        List<?> students = (List<?>) mav.getModel().get("students");
+        assertEquals(1, students.size());
+        assertEquals(2, ((CollegeStudent) students.get(0)).getId());
+    }
+
     @Test
     public void createStudentHttpRequest() throws Exception {
 
@@ -152,15 +217,43 @@ public class GradebookControllerTest {
                 .param("firstname", request.getParameterValues("firstname"))
                 .param("lastname", request.getParameterValues("lastname"))
                 .param("emailAddress", request.getParameterValues("emailAddress"))
-            ).andExpect(status().isOk()).andReturn();
+            ).andExpect(status().is3xxRedirection()).andReturn();
 
         ModelAndView mav = mvcResult.getModelAndView();
-        ModelAndViewAssert.assertViewName(mav, "index");
+        ModelAndViewAssert.assertViewName(mav, "redirect:/");
 
         // verify in db
         assertNotNull(studentDao.findByEmailAddress("chad.darby@luv2code.com"));
     }
 
+    @Test
+    public void createStudentHttpRequestDuplicateEmail() throws Exception {
+
+        MvcResult mvcResult = this.mockMvc.perform(post("/")
+                        .param("firstname", "Rick")
+                        .param("lastname", "Norman")
+                        .param("emailAddress", "rick.norman@luv2code.com"))
+                .andExpect(status().isOk()).andReturn();
+
+        ModelAndViewAssert.assertViewName(mvcResult.getModelAndView(), "error");
+        assertEquals(1, jdbc.queryForObject("SELECT COUNT(*) FROM student", Integer.class));
+    }
+
+    @Test
+    public void createStudentHttpRequestDoesNotReadRoster() throws Exception {
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        this.mockMvc.perform(post("/")
+                        .param("firstname", "Eric")
+                        .param("lastname", "Roby")
+                        .param("emailAddress", "eric.roby@luv2code.com"))
+                .andExpect(status().is3xxRedirection());
+
+        assertEquals(1, statistics.getPrepareStatementCount(), "Only the insert, whatever the roster size");
+    }
+
     @Test
     public void deleteStudentHttpRequest() throws Exception {
 
@@ -169,10 +262,10 @@ public class GradebookControllerTest {
 
         MvcResult mvcResult = this.mockMvc.perform(
                 get("/delete/student/{id}", 1))
-                .andExpect(status().isOk()).andReturn();
+                .andExpect(status().is3xxRedirection()).andReturn();
 
         ModelAndView mav = mvcResult.getModelAndView();
-        ModelAndViewAssert.assertViewName(mav, "index");
+        ModelAndViewAssert.assertViewName(mav, "redirect:/");
 
         assertFalse(studentDao.findById(1).isPresent());
     }
@@ -321,4 +414,264 @@ public class GradebookControllerTest {
         ModelAndView mav = mvcResult.getModelAndView();
         ModelAndViewAssert.assertViewName(mav, "error");
     }
+
+    @Test
+    public void studentInformationConcurrentRequestsDoNotMixStudents() throws Exception {
+
+        int students = 50;
+        for (int id = 100; id < 100 + students; id++) {
+            jdbc.update("INSERT INTO student(id, firstname, lastname, email_address) VALUES(?, ?, ?, ?)",
+                    id, "First" + id, "Last" + id, "student" + id + "@luv2code.com");
+            jdbc.update("INSERT INTO student_grade(id, subject, student_id, grade) VALUES(?, 'math', ?, ?)", id, id, id - 50.0);
+            jdbc.update("INSERT INTO student_grade_total(student_id, subject, grade_count, grade_sum, grade_sum_squares) " +
+                    "VALUES(?, 'math', 1, ?, ?)", id, id - 50.0, (id - 50.0) * (id - 50.0));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                int studentId = 100 + (i % students);
+                futures.add(executor.submit(() -> {
+                    ModelAndView mav = mockMvc.perform(get("/studentInformation/{id}", studentId))
+                            .andExpect(status().isOk()).andReturn().getModelAndView();
+                    GradebookCollegeStudent student = (GradebookCollegeStudent) mav.getModel().get("student");
+
+                    assertEquals(studentId, student.getId());
+                    assertEquals("First" + studentId, student.getFirstname());
+                    List<Grade> mathGrades = student.getStudentGrades().getMathGradeResults();
+                    assertEquals(1, mathGrades.size());
+                    assertEquals(studentId, mathGrades.get(0).getStudentId());
+                    assertEquals(studentId - 50.0, mathGrades.get(0).getGrade());
+                    assertEquals(studentId - 50.0, mav.getModel().get("mathAverage"));
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();   // rethrows any assertion failure from the worker
+            }
+        } finally {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        }
+    }
+
+    @Test
+    public void importGradesJsonHttpRequest() throws Exception {
+
+        this.mockMvc.perform(post("/grades/import")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"studentId\": 1, \"gradeType\": \"math\", \"grade\": 75.5}," +
+                                "{\"studentId\": 2, \"gradeType\": \"math\", \"grade\": 75.5}]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.imported").value(1))
+                .andExpect(jsonPath("$.errors[0].row").value(2));
+
+        assertEquals(2, ((Collection) mathGradesDao.findGradeByStudentId(1)).size());
+    }
+
+    @Test
+    public void deleteStudentsHttpRequest() throws Exception {
+
+        jdbc.execute("INSERT INTO student(id, firstname, lastname, email_address) " +
+                "VALUES(2, 'Eric', 'Roby', 'eric.roby@luv2code.com')");
+
+        this.mockMvc.perform(post("/students/delete")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[1, 2, 3]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.deleted").value(2));
+
+        assertEquals(0, jdbc.queryForObject("SELECT COUNT(*) FROM student", Integer.class));
+        assertEquals(0, jdbc.queryForObject("SELECT COUNT(*) FROM student_grade", Integer.class));
+    }
+
+    @Test
+    public void studentInformationHttpRequestStatementCount() throws Exception {
+        // student with grades, then the totals for the averages
+        assertEquals(2, statementsFor(get("/studentInformation/{id}", 1), "studentInformation"));
+        // averages are cached now
+        assertEquals(1, statementsFor(get("/studentInformation/{id}", 1), "studentInformation"));
+        assertEquals(1, statementsFor(get("/studentInformation/{id}", 0), "error"));
+    }
+
+    @Test
+    public void createGradeHttpRequestStatementCount() throws Exception {
+        // insert, total update, student with grades, totals
+        assertEquals(4, statementsFor(post("/grades").contentType(MediaType.APPLICATION_JSON)
+                .param("grade", "85.00").param("gradeType", "math").param("studentId", "1"), "studentInformation"));
+        // the insert finds no student
+        assertEquals(1, statementsFor(post("/grades").contentType(MediaType.APPLICATION_JSON)
+                .param("grade", "85.00").param("gradeType", "math").param("studentId", "0"), "error"));
+        assertEquals(0, statementsFor(post("/grades").contentType(MediaType.APPLICATION_JSON)
+                .param("grade", "85.00").param("gradeType", "literature").param("studentId", "1"), "error"));
+    }
+
+    @Test
+    public void deleteGradeHttpRequestStatementCount() throws Exception {
+        // grade lookup, delete, total update, student with grades, totals
+        assertEquals(5, statementsFor(get("/grades/{id}/{gradeType}", 1, "math"), "studentInformation"));
+        assertEquals(1, statementsFor(get("/grades/{id}/{gradeType}", 1, "math"), "error"));
+    }
+
+    @Test
+    public void deleteStudentHttpRequestStatementCount() throws Exception {
+        // grades, totals and the student, no lookup first
+        assertEquals(3, statementsFor(get("/delete/student/{id}", 1), "redirect:/"));
+        assertEquals(3, statementsFor(get("/delete/student/{id}", 1), "error"));
+    }
+
+    @Test
+    public void cacheStatisticsHttpRequest() throws Exception {
+        this.mockMvc.perform(get("/studentInformation/{id}", 1));
+
+        this.mockMvc.perform(get("/cache/stats"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.gradeAverages.misses").value(1))
+                .andExpect(jsonPath("$.regions").isMap());
+    }
+
+    @Test
+    public void studentPageStatementBudget() throws Exception {
+        MvcResult mvcResult = this.mockMvc.perform(get("/studentInformation/{id}", 1))
+                .andExpect(status().isOk()).andReturn();
+
+        StatementLog statements = (StatementLog) mvcResult.getRequest().getAttribute(StatementBudgetInterceptor.STATEMENTS);
+        // JdbcTemplate statements count too, the statistics were invalidated before the test
+        assertEquals(3, statements.getCount(), "Student with grades, the totals, then the class ranks: " + statements);
+        assertTrue(statements.getRepeated(1).isEmpty(), "No statement runs twice");
+    }
+
+    @Test
+    public void statementBudgetFailsOnRepeatedStatement() throws Exception {
+        StatementBudgetInterceptor interceptor = new StatementBudgetInterceptor(StatementBudgetInterceptor.Mode.FAIL);
+        HandlerMethod handler = new HandlerMethod(gradebookController,
+                GradebookController.class.getMethod("studentInformation", int.class, Model.class));
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        interceptor.preHandle(request, response, handler);
+        // one grade query per subject, the N+1 shape the single student query replaced
+        jdbc.queryForList("SELECT * FROM student WHERE id = ?", 1);
+        jdbc.queryForList("SELECT * FROM student_grade WHERE student_id = ? AND subject = ?", 1, "math");
+        jdbc.queryForList("SELECT * FROM student_grade WHERE student_id = ? AND subject = ?", 1, "science");
+        try {
+            IllegalStateException exception = assertThrows(IllegalStateException.class,
+                    () -> interceptor.postHandle(request, response, handler, null));
+            assertTrue(exception.getMessage().contains("N+1"), exception.getMessage());
+        } finally {
+            interceptor.afterCompletion(request, response, handler, null);
+        }
+        assertNull(StatementLog.stop(), "Recording ends with the request");
+    }
+
+    @Test
+    public void apiStudentHttpRequestSupportsConditionalGet() throws Exception {
+        MvcResult mvcResult = this.mockMvc.perform(get("/api/students/{id}", 1))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id").value(1))
+                .andExpect(jsonPath("$.emailAddress").value("rick.norman@luv2code.com"))
+                .andReturn();
+        String etag = mvcResult.getResponse().getHeader("ETag");
+        assertNotNull(etag);
+
+        this.mockMvc.perform(get("/api/students/{id}", 1).header("If-None-Match", etag))
+                .andExpect(status().isNotModified());
+
+        jdbc.execute("UPDATE student SET lastname = 'Darby' WHERE id = 1");
+        this.mockMvc.perform(get("/api/students/{id}", 1).header("If-None-Match", etag))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.lastname").value("Darby"));
+
+        this.mockMvc.perform(get("/api/students/{id}", 0)).andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void apiStudentGradesHttpRequest() throws Exception {
+        this.mockMvc.perform(get("/api/students/{id}/grades", 1))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(3))
+                .andExpect(jsonPath("$[0].subject").value("math"))
+                .andExpect(jsonPath("$[0].grade").value(100.0));
+
+        this.mockMvc.perform(post("/api/grades")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"studentId\": 1, \"gradeType\": \"science\", \"grade\": 75.5}"))
+                .andExpect(status().isCreated());
+        this.mockMvc.perform(post("/api/grades")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"studentId\": 2, \"gradeType\": \"science\", \"grade\": 75.5}"))
+                .andExpect(status().isBadRequest());
+
+        this.mockMvc.perform(get("/api/grades").param("after", "2").param("size", "10"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[1].grade").value(75.5));
+
+        this.mockMvc.perform(get("/api/students/{id}/grades", 2)).andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void apiStatisticsHttpRequest() throws Exception {
+        assertTrue(studentService.createGrade(80.0, 1, "math"));
+
+        this.mockMvc.perform(get("/api/stats"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.math.count").value(2))
+                .andExpect(jsonPath("$.math.mean").value(90.0))
+                .andExpect(jsonPath("$.math.median").value(90.0))
+                .andExpect(jsonPath("$.math.histogram['80-89']").value(1))
+                .andExpect(jsonPath("$.science.count").value(1));
+    }
+
+    @Test
+    public void apiExportHttpRequest() throws Exception {
+        MvcResult csv = this.mockMvc.perform(get("/api/export"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        assertEquals(30 * 60 * 1000L, csv.getRequest().getAsyncContext().getTimeout(),
+                "gradebook.export.timeout, set for the export alone");
+        String body = this.mockMvc.perform(asyncDispatch(csv))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Disposition", "attachment; filename=\"gradebook.csv\""))
+                .andReturn().getResponse().getContentAsString();
+        assertEquals("id,firstname,lastname,email_address,math_average,science_average,history_average," +
+                "math_grades,science_grades,history_grades\n" +
+                "1,Rick,Norman,rick.norman@luv2code.com,100.0,100.0,100.0,100.0,100.0,100.0\n", body);
+
+        jdbc.execute("INSERT INTO student(id, firstname, lastname, email_address) " +
+                "VALUES(2, 'Eric', 'Roby, Jr.', 'eric.roby@luv2code.com')");
+        MvcResult ndjson = this.mockMvc.perform(get("/api/export").param("format", "ndjson"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        String[] lines = this.mockMvc.perform(asyncDispatch(ndjson))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString().split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].contains("\"grades\":{\"math\":[100.0],\"science\":[100.0],\"history\":[100.0]}"));
+        assertTrue(lines[1].contains("\"lastname\":\"Roby, Jr.\""));
+        assertTrue(lines[1].contains("\"averages\":{\"math\":null,\"science\":null,\"history\":null}"));
+
+        this.mockMvc.perform(get("/api/export").param("format", "xlsx")).andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void apiStudentsHttpRequest() throws Exception {
+        jdbc.execute("INSERT INTO student(id, firstname, lastname, email_address) " +
+                "VALUES(2, 'Eric', 'Roby', 'eric.roby@luv2code.com')");
+
+        this.mockMvc.perform(get("/api/students").param("after", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].firstname").value("Eric"))
+                .andExpect(jsonPath("$[0].target").doesNotExist());
+    }
+
+    private long statementsFor(MockHttpServletRequestBuilder request, String viewName) throws Exception {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        MvcResult mvcResult = this.mockMvc.perform(request).andReturn();
+        ModelAndViewAssert.assertViewName(mvcResult.getModelAndView(), viewName);
+        return statistics.getPrepareStatementCount();
+    }
 }
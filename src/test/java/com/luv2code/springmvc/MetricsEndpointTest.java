@@ -0,0 +1,76 @@
+package com.luv2code.springmvc;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.metrics.AutoConfigureMetrics;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Metrics export is off in tests unless asked for, this class scrapes the real prometheus output
+@TestPropertySource("/application-test.properties")
+@AutoConfigureMetrics
+@AutoConfigureMockMvc
+@SpringBootTest
+public class MetricsEndpointTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @BeforeEach
+    public void setupDatabase() {
+        jdbc.execute("INSERT INTO student(id, firstname, lastname, email_address) " +
+                "VALUES(1, 'Rick', 'Norman', 'rick.norman@luv2code.com')");
+    }
+
+    @Test
+    public void prometheusScrape() throws Exception {
+        mockMvc.perform(get("/studentInformation/{id}", 1)).andExpect(status().isOk());
+        mockMvc.perform(post("/grades").param("grade", "85.5").param("gradeType", "math").param("studentId", "1"))
+                .andExpect(status().isOk());
+        mockMvc.perform(post("/grades").param("grade", "85.5").param("gradeType", "literature").param("studentId", "1"))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(get("/actuator/prometheus"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString(
+                        "gradebook_requests_seconds_count{handler=\"createGrades\",outcome=\"success\",subject=\"math\",} 1.0")))
+                .andExpect(content().string(containsString(
+                        "gradebook_requests_seconds_count{handler=\"createGrades\",outcome=\"error\",subject=\"other\",} 1.0")))
+                .andExpect(content().string(containsString(
+                        "gradebook_grades_total{operation=\"create\",outcome=\"success\",subject=\"math\",} 1.0")))
+                .andExpect(content().string(containsString("gradebook_service_seconds_count{")))
+                .andExpect(content().string(containsString("gradebook_view_render_seconds_count{view=\"studentInformation\",}")))
+                .andExpect(content().string(containsString("hibernate_statements_total")))
+                .andExpect(content().string(containsString("hikaricp_connections_active")));
+    }
+
+    @Test
+    public void infoShowsApplication() throws Exception {
+        mockMvc.perform(get("/actuator/info").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.app.name").value("My Super Cool Gradebook"));
+    }
+
+    @AfterEach
+    public void cleanup() {
+        jdbc.execute("DELETE FROM student");
+        jdbc.execute("DELETE FROM student_grade");
+        jdbc.execute("DELETE FROM student_grade_total");
+    }
+}
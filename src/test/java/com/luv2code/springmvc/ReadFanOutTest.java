@@ -0,0 +1,177 @@
+package com.luv2code.springmvc;
+
+import com.luv2code.springmvc.config.StatementLog;
+import com.luv2code.springmvc.service.GradeAverageCache;
+import com.luv2code.springmvc.service.GradeStatisticsService;
+import com.luv2code.springmvc.service.StudentAndGradeService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.ui.ExtendedModelMap;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Every query is slowed down by DELAY_MILLIS, so the student page takes one delay with the fan-out and two without
+@TestPropertySource(value = "/application-test.properties", properties = {
+        "gradebook.fan-out.enabled=true",
+        "gradebook.fan-out.wait-ms=1000",
+        "spring.datasource.hikari.maximum-pool-size=2"})
+@SpringBootTest
+public class ReadFanOutTest {
+
+    private static final long DELAY_MILLIS = 300;
+
+    private static volatile boolean delayed;
+
+    @Autowired
+    private StudentAndGradeService studentService;
+
+    @Autowired
+    private GradeAverageCache gradeAverageCache;
+
+    @Autowired
+    private GradeStatisticsService gradeStatistics;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @TestConfiguration
+    static class DelayedDataSourceConfiguration {
+
+        @Bean
+        public static BeanPostProcessor delayedDataSourcePostProcessor() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    return bean instanceof DataSource ? new DelayedDataSource((DataSource) bean) : bean;
+                }
+            };
+        }
+    }
+
+    static class DelayedDataSource extends DelegatingDataSource {
+
+        DelayedDataSource(DataSource target) {
+            super(target);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            Connection connection = super.getConnection();
+            return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {Connection.class},
+                    (proxy, method, args) -> {
+                        Object result = invoke(connection, method, args);
+                        if (result instanceof PreparedStatement)
+                            return delayQueries((PreparedStatement) result);
+                        return result;
+                    });
+        }
+
+        private static PreparedStatement delayQueries(PreparedStatement statement) {
+            return (PreparedStatement) Proxy.newProxyInstance(DelayedDataSource.class.getClassLoader(),
+                    new Class<?>[] {PreparedStatement.class}, (proxy, method, args) -> {
+                        if (delayed && method.getName().equals("executeQuery"))
+                            Thread.sleep(DELAY_MILLIS);
+                        return invoke(statement, method, args);
+                    });
+        }
+
+        private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+        }
+    }
+
+    @BeforeEach
+    public void setupDatabase() {
+        jdbc.execute("INSERT INTO student(id, firstname, lastname, email_address) " +
+                "VALUES(1, 'Rick', 'Norman', 'rick.norman@luv2code.com')");
+        jdbc.execute("INSERT INTO student_grade(id, subject, student_id, grade) VALUES(1, 'math', 1, 80.0)");
+        jdbc.execute("INSERT INTO student_grade_total(id, student_id, subject, grade_count, grade_sum, grade_sum_squares) " +
+                "VALUES(1, 1, 'math', 1, 80.0, 6400.0)");
+        // class ranks are loaded up front, only the page's own two reads are timed
+        gradeStatistics.invalidate();
+        studentService.configureStudentInformationModel(1, new ExtendedModelMap());
+        gradeAverageCache.clear();
+        delayed = true;
+    }
+
+    @Test
+    public void studentPageWaitsForSlowestRead() {
+        ExtendedModelMap model = new ExtendedModelMap();
+        long start = System.nanoTime();
+        assertTrue(studentService.configureStudentInformationModel(1, model));
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertEquals(80.0, model.getAttribute("mathAverage"));
+        assertEquals("N/A", model.getAttribute("scienceAverage"));
+        assertTrue(elapsedMillis >= DELAY_MILLIS, "Took " + elapsedMillis + " ms");
+        assertTrue(elapsedMillis < 2 * DELAY_MILLIS, "Reads ran one after the other, took " + elapsedMillis + " ms");
+    }
+
+    @Test
+    public void studentPageWorksWithPoolExhausted() throws SQLException {
+        // the page's own transaction gets the last connection, the forked read has to give up
+        try (Connection held = dataSource.getConnection()) {
+            ExtendedModelMap model = new ExtendedModelMap();
+            assertTrue(studentService.configureStudentInformationModel(1, model));
+            assertEquals(80.0, model.getAttribute("mathAverage"));
+        }
+    }
+
+    @Test
+    public void forkedReadCountsTowardCallersStatements() {
+        StatementLog statements = StatementLog.start();
+        try {
+            assertTrue(studentService.configureStudentInformationModel(1, new ExtendedModelMap()));
+        } finally {
+            StatementLog.stop();
+        }
+        assertEquals(2, statements.getCount(), "Student with grades here, totals on a fan-out thread: " + statements);
+    }
+
+    @Test
+    public void forkedTotalsThatDisagreeWithPageAreNotUsed() {
+        // as if a second grade committed between the page's read and the forked one
+        jdbc.execute("UPDATE student_grade_total SET grade_count = 2, grade_sum = 150.0 WHERE student_id = 1");
+
+        ExtendedModelMap model = new ExtendedModelMap();
+        assertTrue(studentService.configureStudentInformationModel(1, model));
+        assertEquals(80.0, model.getAttribute("mathAverage"), "Average of the grades on the page");
+    }
+
+    @Test
+    public void unknownStudentStillReportsMissing() {
+        assertFalse(studentService.configureStudentInformationModel(0, new ExtendedModelMap()));
+    }
+
+    @AfterEach
+    public void cleanup() {
+        delayed = false;
+        jdbc.execute("DELETE FROM student_grade_total");
+        jdbc.execute("DELETE FROM student_grade");
+        jdbc.execute("DELETE FROM student");
+    }
+}
@@ -0,0 +1,86 @@
+package com.luv2code.springmvc;
+
+import com.luv2code.springmvc.models.GradebookCollegeStudent;
+import com.luv2code.springmvc.repository.StudentDao;
+import com.luv2code.springmvc.service.StudentAndGradeService;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.ui.ExtendedModelMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// A second in-memory database stands in for the replica, it only has the rows this test puts there
+@TestPropertySource(value = "/application-test.properties",
+        properties = "gradebook.datasource.replica.url=" + ReplicaRoutingTest.REPLICA_URL)
+@SpringBootTest
+public class ReplicaRoutingTest {
+
+    static final String REPLICA_URL = "jdbc:h2:mem:replica;DB_CLOSE_DELAY=-1";
+
+    @Autowired
+    private StudentAndGradeService studentService;
+
+    @Autowired
+    private StudentDao studentDao;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    private JdbcTemplate replica;
+
+    @BeforeEach
+    public void setupReplica() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(REPLICA_URL, "sa", "password");
+        Flyway.configure().dataSource(dataSource).load().migrate();
+        replica = new JdbcTemplate(dataSource);
+        replica.execute("INSERT INTO student(id, firstname, lastname, email_address) " +
+                "VALUES(7, 'Eric', 'Roby', 'eric.roby@luv2code.com')");
+    }
+
+    @Test
+    public void readOnlyTransactionsUseReplica() {
+        assertFalse(studentService.checkIfStudentIsNull(7));
+        GradebookCollegeStudent student = studentService.studentInformation(7);
+        assertNotNull(student);
+        assertEquals("eric.roby@luv2code.com", student.getEmailAddress());
+        assertEquals(0, jdbc.queryForObject("SELECT COUNT(*) FROM student", Integer.class), "Not on the primary");
+    }
+
+    @Test
+    public void writesUsePrimary() {
+        studentService.createStudent("Chad", "Darby", "chad.darby@luv2code.com");
+
+        // outside a read-only transaction, so this is answered by the primary
+        assertNotNull(studentDao.findByEmailAddress("chad.darby@luv2code.com"));
+        assertEquals(1, jdbc.queryForObject("SELECT COUNT(*) FROM student", Integer.class));
+        assertEquals(1, replica.queryForObject("SELECT COUNT(*) FROM student", Integer.class), "Replica only has its own row");
+    }
+
+    @Test
+    public void pageAfterWriteUsesPrimary() {
+        // a student the lagging replica does not have yet
+        jdbc.execute("INSERT INTO student(id, firstname, lastname, email_address) " +
+                "VALUES(8, 'Chad', 'Darby', 'chad.darby@luv2code.com')");
+        assertTrue(studentService.createGrade(80.0, 8, "math"));
+
+        ExtendedModelMap model = new ExtendedModelMap();
+        assertTrue(studentService.configureStudentInformationModelAfterWrite(8, model));
+        assertEquals(80.0, model.getAttribute("mathAverage"));
+        assertFalse(studentService.configureStudentInformationModel(8, new ExtendedModelMap()), "Replica lags");
+    }
+
+    @AfterEach
+    public void cleanup() {
+        jdbc.execute("DELETE FROM student_grade");
+        jdbc.execute("DELETE FROM student_grade_total");
+        jdbc.execute("DELETE FROM student");
+        replica.execute("DELETE FROM student");
+    }
+}
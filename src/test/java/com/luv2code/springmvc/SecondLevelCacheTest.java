@@ -0,0 +1,101 @@
+package com.luv2code.springmvc;
+
+import com.luv2code.springmvc.repository.GradeDao;
+import com.luv2code.springmvc.service.SecondLevelCacheService;
+import com.luv2code.springmvc.service.StudentAndGradeService;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@TestPropertySource(value = "/application-test.properties", properties = {
+        "spring.jpa.properties.hibernate.cache.use_second_level_cache=true",
+        "spring.jpa.properties.hibernate.cache.region.factory_class=jcache"})
+@SpringBootTest
+public class SecondLevelCacheTest {
+
+    @Autowired
+    private StudentAndGradeService studentService;
+
+    @Autowired
+    private SecondLevelCacheService secondLevelCacheService;
+
+    @Autowired
+    private GradeDao gradeDao;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    public void setupDatabase() {
+        jdbc.execute("INSERT INTO student(id, firstname, lastname, email_address) " +
+                "VALUES(1, 'Rick', 'Norman', 'rick.norman@luv2code.com')");
+        jdbc.execute("INSERT INTO student_grade(id, subject, student_id, grade) VALUES(1, 'math', 1, 100.0)");
+        // the rows above went in behind hibernate's back
+        secondLevelCacheService.evictAll();
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    public void gradeIsLoadedOnce() {
+        assertTrue(gradeDao.findById(1).isPresent());
+        long statements = statistics.getPrepareStatementCount();
+
+        assertTrue(gradeDao.findById(1).isPresent());
+        assertEquals(statements, statistics.getPrepareStatementCount(), "Second lookup comes from the cache");
+        assertEquals(1, statistics.getSecondLevelCacheHitCount());
+    }
+
+    @Test
+    public void deleteGradeEvictsGrade() {
+        assertTrue(gradeDao.findById(1).isPresent());
+
+        assertEquals(1, studentService.deleteGrade(1, "math"));
+
+        assertTrue(gradeDao.findById(1).isEmpty());
+    }
+
+    @Test
+    public void deleteStudentEvictsGrades() {
+        assertTrue(gradeDao.findById(1).isPresent());
+
+        assertTrue(studentService.deleteStudent(1));
+
+        assertTrue(gradeDao.findById(1).isEmpty());
+    }
+
+    @Test
+    public void statisticsIncludeRegions() {
+        gradeDao.findById(1);
+        gradeDao.findById(1);
+
+        Map<String, Object> cacheStatistics = secondLevelCacheService.getStatistics();
+        Map<?, ?> regions = (Map<?, ?>) cacheStatistics.get("regions");
+        assertEquals(1L, ((Map<?, ?>) regions.get("grade")).get("hits"));
+        assertTrue(cacheStatistics.containsKey("gradeAverages"));
+    }
+
+    @AfterEach
+    public void cleanup() {
+        jdbc.execute("DELETE FROM student");
+        jdbc.execute("DELETE FROM student_grade");
+        jdbc.execute("DELETE FROM student_grade_total");
+        secondLevelCacheService.evictAll();
+    }
+}
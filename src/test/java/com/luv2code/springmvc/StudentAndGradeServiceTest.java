@@ -5,21 +5,49 @@ import com.luv2code.springmvc.repository.HistoryGradeDao;
 import com.luv2code.springmvc.repository.MathGradeDao;
 import com.luv2code.springmvc.repository.ScienceGradeDao;
 import com.luv2code.springmvc.repository.StudentDao;
+import com.luv2code.springmvc.repository.StudentGradeTotalDao;
+import com.luv2code.springmvc.service.GradeImportService;
+import com.luv2code.springmvc.service.GradeTotalReconciler;
+import com.luv2code.springmvc.service.GradeAverageCache;
+import com.luv2code.springmvc.service.GradeStatisticsService;
 import com.luv2code.springmvc.service.StudentAndGradeService;
+import com.luv2code.springmvc.service.StudentImportService;
+import org.flywaydb.core.Flyway;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.jdbc.Sql;
+import org.springframework.ui.ExtendedModelMap;
 
+import javax.persistence.EntityManagerFactory;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -38,6 +66,20 @@ public class StudentAndGradeServiceTest {
     @Autowired
     HistoryGradeDao historyGradeDao;
     @Autowired
+    StudentGradeTotalDao studentGradeTotalDao;
+    @Autowired
+    GradeAverageCache gradeAverageCache;
+    @Autowired
+    GradeStatisticsService gradeStatistics;
+    @Autowired
+    GradeImportService gradeImportService;
+    @Autowired
+    GradeTotalReconciler gradeTotalReconciler;
+    @Autowired
+    StudentImportService studentImportService;
+    @Autowired
+    EntityManagerFactory entityManagerFactory;
+    @Autowired
     private JdbcTemplate jdbc;  // JdbcTemplate is a helper class provided by Spring to help execute JDBC operations
 
     @Value("${sql.script.insert.student}")
@@ -64,13 +106,22 @@ public class StudentAndGradeServiceTest {
     @Value("${sql.script.delete.history.grade}")
     private String sqlDeleteHistoryGrade;
 
+    @Value("${sql.script.insert.grade.total}")
+    private String sqlInsertGradeTotal;
+
+    @Value("${sql.script.delete.grade.total}")
+    private String sqlDeleteGradeTotal;
+
     @BeforeEach
     public void setupDatabase() {
 
+        gradeAverageCache.clear();  // fixtures are written with plain SQL, behind the cache's back
+        gradeStatistics.invalidate();
         jdbc.execute(sqlInsertStudent);
         jdbc.execute(sqlInsertMathGrade);
         jdbc.execute(sqlInsertScienceGrade);
         jdbc.execute(sqlInsertHistoryGrade);
+        jdbc.execute(sqlInsertGradeTotal);
 
     }
 
@@ -80,6 +131,7 @@ public class StudentAndGradeServiceTest {
         jdbc.execute(sqlDeleteMathGrade);
         jdbc.execute(sqlDeleteScienceGrade);
         jdbc.execute(sqlDeleteHistoryGrade);
+        jdbc.execute(sqlDeleteGradeTotal);
     }
 
     @Test
@@ -97,6 +149,12 @@ public class StudentAndGradeServiceTest {
         assertTrue(studentService.checkIfStudentIsNull(0));
     }
 
+    @Test
+    public void deleteStudentServiceUnknownStudent() {
+        assertFalse(studentService.deleteStudent(0));
+        assertTrue(studentDao.existsById(1));
+    }
+
     @Test
     public void deleteStudentService() {
 
@@ -137,6 +195,29 @@ public class StudentAndGradeServiceTest {
         assertEquals(4, collegeStudents.size());
     }
 
+    @Sql("/sql/insert.sql")
+    @Test
+    public void getGradebookPageService() {
+        List<CollegeStudent> firstPage = studentService.getGradebookPage(0, "", "id", 2);
+        assertEquals(List.of(1, 2), firstPage.stream().map(CollegeStudent::getId).collect(Collectors.toList()));
+
+        List<CollegeStudent> secondPage = studentService.getGradebookPage(2, "", "id", 2);
+        assertEquals(List.of(3, 4), secondPage.stream().map(CollegeStudent::getId).collect(Collectors.toList()));
+
+        assertTrue(studentService.getGradebookPage(4, "", "id", 2).isEmpty());
+    }
+
+    @Sql("/sql/insert.sql")
+    @Test
+    public void getGradebookPageSortedByLastnameService() {
+        // Janes(4), Norman(1), Norman(2), Well(3)
+        List<CollegeStudent> firstPage = studentService.getGradebookPage(0, "", "lastname", 3);
+        assertEquals(List.of(4, 1, 2), firstPage.stream().map(CollegeStudent::getId).collect(Collectors.toList()));
+
+        List<CollegeStudent> secondPage = studentService.getGradebookPage(2, "Norman", "lastname", 3);
+        assertEquals(List.of(3), secondPage.stream().map(CollegeStudent::getId).collect(Collectors.toList()));
+    }
+
     @Test
     public void createGradeService() {
 
@@ -168,9 +249,17 @@ public class StudentAndGradeServiceTest {
 
     @Test
     public void deleteGradeService() {
+        // one grade table, so the fixture grades have ids 1 (math), 2 (science) and 3 (history)
         assertEquals(1, studentService.deleteGrade(1, "math"), "Return student id after delete math grade");
-        assertEquals(1, studentService.deleteGrade(1, "history"), "Return student id after delete history grade");
-        assertEquals(1, studentService.deleteGrade(1, "science"), "Return student id after delete science grade");
+        assertEquals(1, studentService.deleteGrade(3, "history"), "Return student id after delete history grade");
+        assertEquals(1, studentService.deleteGrade(2, "science"), "Return student id after delete science grade");
+    }
+
+    @Test
+    public void deleteGradeServiceWrongSubject() {
+        assertEquals(0, studentService.deleteGrade(1, "science"), "Grade 1 is a math grade");
+        assertTrue(mathGradeDao.existsById(1));
+        assertFalse(scienceGradeDao.existsById(1), "Subject DAOs only see their own subject");
     }
 
     @Test
@@ -207,4 +296,401 @@ public class StudentAndGradeServiceTest {
         GradebookCollegeStudent gradebookCollegeStudent = studentService.studentInformation(0);
         assertNull(gradebookCollegeStudent, "Student not found");
     }
+
+    @Test
+    public void studentInformationUsesSingleQuery() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        GradebookCollegeStudent gradebookCollegeStudent = studentService.studentInformation(1);
+
+        assertNotNull(gradebookCollegeStudent);
+        assertEquals(1, statistics.getPrepareStatementCount(), "Student and grades are loaded in one query");
+    }
+
+    @Test
+    public void studentInformationWithoutGrades() {
+        jdbc.execute(sqlDeleteMathGrade);
+        jdbc.execute(sqlDeleteScienceGrade);
+        jdbc.execute(sqlDeleteHistoryGrade);
+
+        GradebookCollegeStudent gradebookCollegeStudent = studentService.studentInformation(1);
+        assertNotNull(gradebookCollegeStudent);
+        assertEquals("Rick", gradebookCollegeStudent.getFirstname());
+        assertTrue(gradebookCollegeStudent.getStudentGrades().getMathGradeResults().isEmpty());
+        assertTrue(gradebookCollegeStudent.getStudentGrades().getScienceGradeResults().isEmpty());
+        assertTrue(gradebookCollegeStudent.getStudentGrades().getHistoryGradeResults().isEmpty());
+    }
+
+    @Test
+    public void createGradeServiceConcurrentInserts() throws Exception {
+        int threads = 8;
+        int insertsPerThread = 50;
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < insertsPerThread; i++) {
+                        assertTrue(studentService.createGrade(75.0, 1, "math"));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        }
+
+        // the fixture's grade plus every concurrent insert, each in its own row
+        Set<Integer> ids = new HashSet<>();
+        mathGradeDao.findGradeByStudentId(1).forEach(grade -> ids.add(grade.getId()));
+        assertEquals(threads * insertsPerThread + 1, ids.size());
+    }
+
+    @Test
+    public void createGradeServiceConcurrentFirstGrades() throws Exception {
+        jdbc.execute("INSERT INTO student(id, firstname, lastname, email_address) " +
+                "VALUES(2, 'Eric', 'Roby', 'eric.roby@luv2code.com')");
+        int threads = 8;
+        CountDownLatch start = new CountDownLatch(1);
+
+        // every thread writes the student's first science grade, only one may insert its total
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    assertTrue(studentService.createGrade(60.0, 2, "science"));
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        }
+
+        List<StudentGradeTotal> totals = studentGradeTotalDao.findByStudentId(2);
+        assertEquals(1, totals.size());
+        assertEquals(threads, totals.get(0).getGradeCount());
+        assertTrue(gradeTotalReconciler.reconcile(false).isEmpty());
+    }
+
+    @Test
+    public void importGradesCsvService() throws IOException {
+        String csv = "studentId,gradeType,grade\n" +
+                "1,math,90.5\n" +
+                "1,science,70\n" +
+                "2,math,80\n" +
+                "1,literature,80\n" +
+                "1,history,105\n" +
+                "1,history\n" +
+                "one,history,80\n" +
+                "1,history,60\n";
+
+        ImportResult result = gradeImportService.importCsv(new StringReader(csv));
+
+        assertEquals(3, result.getImported());
+        assertEquals(5, result.getErrors().size());
+        assertEquals(2, ((Collection<MathGrade>) mathGradeDao.findGradeByStudentId(1)).size());
+        assertEquals(2, ((Collection<ScienceGrade>) scienceGradeDao.findGradeByStudentId(1)).size());
+        assertEquals(2, ((Collection<HistoryGrade>) historyGradeDao.findGradeByStudentId(1)).size());
+    }
+
+    @Test
+    public void importStudentsCsvService() throws IOException {
+        String csv = "firstname,lastname,emailAddress\n" +
+                "Chad,Darby,chad.darby@luv2code.com\n" +
+                "Eric,Roby,eric.roby@luv2code.com\n" +
+                "Chad,Darby,chad.darby@luv2code.com\n" +
+                "Rick,Norman,rick.norman@luv2code.com\n" +
+                "Missing,Email\n";
+
+        ImportResult result = studentImportService.importCsv(new StringReader(csv));
+
+        assertEquals(2, result.getImported());
+        assertEquals(2, result.getSkipped(), "Duplicate in file and existing student are skipped");
+        assertEquals(1, result.getErrors().size());
+        assertNotNull(studentDao.findByEmailAddress("eric.roby@luv2code.com"));
+    }
+
+    @Test
+    public void importStudentsJsonLinesService() throws IOException {
+        String jsonLines = "{\"firstname\": \"Chad\", \"lastname\": \"Darby\", \"emailAddress\": \"chad.darby@luv2code.com\"}\n" +
+                "not json\n";
+
+        ImportResult result = studentImportService.importJsonLines(new StringReader(jsonLines));
+
+        assertEquals(1, result.getImported());
+        assertEquals(2, result.getErrors().get(0).getRow());
+        assertNotNull(studentDao.findByEmailAddress("chad.darby@luv2code.com"));
+    }
+
+    @Test
+    public void gradeAveragesAreCachedAndKeptUpToDate() {
+        long hits = gradeAverageCache.getHits();
+        long misses = gradeAverageCache.getMisses();
+
+        ExtendedModelMap model = new ExtendedModelMap();
+        studentService.configureStudentInformationModel(1, model);
+        assertEquals(100.0, model.getAttribute("mathAverage"));
+        assertEquals(misses + 1, gradeAverageCache.getMisses());
+
+        studentService.configureStudentInformationModel(1, model);
+        assertEquals(hits + 1, gradeAverageCache.getHits());
+
+        // write-through on create and delete
+        assertTrue(studentService.createGrade(50.0, 1, "math"));
+        studentService.configureStudentInformationModel(1, model);
+        assertEquals(75.0, model.getAttribute("mathAverage"));
+        assertEquals(hits + 2, gradeAverageCache.getHits());
+
+        studentService.deleteGrade(3, "history");
+        studentService.configureStudentInformationModel(1, model);
+        assertEquals("N/A", model.getAttribute("historyAverage"));
+        assertEquals(hits + 3, gradeAverageCache.getHits());
+
+        studentService.deleteStudent(1);
+        assertEquals(0, gradeAverageCache.size());
+    }
+
+    @Test
+    public void gradeTotalsFollowGradeWrites() {
+        assertTrue(studentService.createGrade(50.0, 1, "math"));
+        assertTrue(studentService.createGrade(80.0, 1, "math"));
+        studentService.deleteGrade(1, "math");
+
+        StudentGradeTotal mathTotal = studentGradeTotalDao.findByStudentId(1).stream()
+                .filter(total -> total.getSubject().equals("math"))
+                .findFirst().orElseThrow();
+        assertEquals(2, mathTotal.getGradeCount());
+        assertEquals(130.0, mathTotal.getGradeSum());
+        assertEquals(50.0 * 50.0 + 80.0 * 80.0, mathTotal.getGradeSumOfSquares());
+
+        assertTrue(gradeTotalReconciler.reconcile(false).isEmpty(), "Totals match the grade rows");
+    }
+
+    @Test
+    public void gradeTotalsReconcileWithGradeTables() {
+        assertTrue(gradeTotalReconciler.reconcile(false).isEmpty());
+
+        // written behind the service's back
+        jdbc.execute("INSERT INTO student_grade(id, subject, student_id, grade) VALUES(4, 'math', 1, 50.0)");
+        jdbc.execute("INSERT INTO student(id, firstname, lastname, email_address) " +
+                "VALUES(2, 'Eric', 'Roby', 'eric.roby@luv2code.com')");
+        jdbc.execute("INSERT INTO student_grade(id, subject, student_id, grade) VALUES(5, 'science', 2, 70.0)");
+
+        assertEquals(2, gradeTotalReconciler.reconcile(true).size());
+        assertTrue(gradeTotalReconciler.reconcile(false).isEmpty(), "Totals repaired");
+
+        ExtendedModelMap model = new ExtendedModelMap();
+        studentService.configureStudentInformationModel(1, model);
+        assertEquals(75.0, model.getAttribute("mathAverage"));
+    }
+
+    @Test
+    public void importGradesUpdatesTotals() throws IOException {
+        gradeImportService.importCsv(new StringReader("1,math,50\n1,math,60\n1,history,80\n"));
+
+        assertTrue(gradeTotalReconciler.reconcile(false).isEmpty(), "Import keeps totals in step");
+    }
+
+    @Test
+    public void gradeAverageRoundingMatchesBigDecimal() {
+        Random random = new Random(7);
+        List<Double> values = new ArrayList<>(List.of(1.005, 2.675, 0.125, 99.995, 66.665, 0.0, -0.0, -0.001));
+        for (int i = 0; i < 100_000; i++) {
+            values.add(random.nextDouble() * 100);
+            values.add((random.nextInt(10000) + 0.5) / 100.0);
+        }
+
+        for (double value : values) {
+            double expected = BigDecimal.valueOf(value).setScale(2, RoundingMode.HALF_UP).doubleValue();
+            assertEquals(0, Double.compare(expected, StudentGrades.roundToTwoDecimals(value)), "Rounding " + value);
+        }
+
+        List<Grade> grades = List.of(new MathGrade(100.0), new MathGrade(75.5), new MathGrade(80.25));
+        StudentGrades studentGrades = new StudentGrades();
+        assertEquals(studentGrades.findGradePointAverage(grades), GradeBuffer.of(grades).average());
+        assertEquals(85.25, GradeBuffer.of(grades).average());
+    }
+
+    @Test
+    public void subjectStatisticsService() {
+        assertTrue(studentService.createGrade(50.0, 1, "math"));
+        assertTrue(studentService.createGrade(70.0, 1, "math"));
+        assertEquals(3, gradeStatistics.getStatistics().get("math").getCount());
+
+        // applied to the loaded counts, not reloaded
+        assertTrue(studentService.createGrade(80.0, 1, "math"));
+        SubjectStatistics math = gradeStatistics.getStatistics().get("math");
+        assertEquals(4, math.getCount());
+        assertEquals(75.0, math.getMean());
+        assertEquals(75.0, math.getMedian());
+        assertEquals(18.03, math.getStandardDeviation());
+        assertEquals(1, math.getHistogram().get("50-59"));
+        assertEquals(1, math.getHistogram().get("90-100"));
+        assertEquals(0, math.getHistogram().get("0-9"));
+        assertEquals(10, math.getHistogram().size());
+        assertEquals(1, gradeStatistics.getStatistics().get("science").getCount());
+
+        gradeStatistics.invalidate();
+        SubjectStatistics reloaded = gradeStatistics.getStatistics().get("math");
+        assertEquals(math.getCount(), reloaded.getCount());
+        assertEquals(math.getMean(), reloaded.getMean());
+        assertEquals(math.getHistogram(), reloaded.getHistogram());
+
+        studentService.deleteGrade(1, "math");
+        assertEquals(3, gradeStatistics.getStatistics().get("math").getCount());
+        assertEquals(70.0, gradeStatistics.getStatistics().get("math").getMedian());
+    }
+
+    @Test
+    public void classRankOnStudentPage() {
+        jdbc.execute("INSERT INTO student(id, firstname, lastname, email_address) " +
+                "VALUES(2, 'Eric', 'Roby', 'eric.roby@luv2code.com'), (3, 'Chad', 'Darby', 'chad.darby@luv2code.com')");
+        assertTrue(studentService.createGrade(90.0, 2, "math"));
+        assertTrue(studentService.createGrade(60.0, 3, "math"));
+        assertTrue(studentService.createGrade(100.0, 3, "math"));
+
+        ExtendedModelMap model = new ExtendedModelMap();
+        studentService.configureStudentInformationModel(2, model);
+        ClassRank rank = (ClassRank) model.getAttribute("mathRank");
+        assertEquals(2, rank.getRank());
+        assertEquals(3, rank.getOutOf());
+        assertEquals(66.7, rank.getPercentile());
+        assertNull(model.getAttribute("scienceRank"), "No science grades");
+
+        // student 3 catches up to 90, the two share second place once the sketch is rebuilt.
+        // The percentile is the share at or below, 2 of {100, 90, 90}, same as before the tie
+        assertTrue(studentService.createGrade(100.0, 3, "math"));
+        assertTrue(studentService.createGrade(100.0, 3, "math"));
+        assertTrue(gradeStatistics.getStaleWrites() > 0);
+        gradeStatistics.compact();
+        assertEquals(0, gradeStatistics.getStaleWrites());
+        studentService.configureStudentInformationModel(2, model);
+        rank = (ClassRank) model.getAttribute("mathRank");
+        assertEquals(2, rank.getRank());
+        assertEquals(3, rank.getOutOf());
+        assertEquals(66.7, rank.getPercentile());
+    }
+
+    @Test
+    public void classRankOutOfIgnoresReplacedAverages() {
+        jdbc.execute("INSERT INTO student(id, firstname, lastname, email_address) " +
+                "VALUES(2, 'Eric', 'Roby', 'eric.roby@luv2code.com'), (3, 'Chad', 'Darby', 'chad.darby@luv2code.com')");
+        assertTrue(studentService.createGrade(90.0, 2, "math"));
+        assertTrue(studentService.createGrade(80.0, 3, "math"));
+
+        ExtendedModelMap model = new ExtendedModelMap();
+        studentService.configureStudentInformationModel(2, model);
+
+        // student 2 is cached, each write adds their new average and keeps the old one, no compaction
+        assertTrue(studentService.createGrade(90.0, 2, "math"));
+        assertTrue(studentService.createGrade(90.0, 2, "math"));
+        assertTrue(gradeStatistics.getStaleWrites() > 0);
+        studentService.configureStudentInformationModel(2, model);
+        ClassRank rank = (ClassRank) model.getAttribute("mathRank");
+        assertEquals(2, rank.getRank());
+        assertEquals(3, rank.getOutOf());
+        assertEquals(66.7, rank.getPercentile());
+
+        // a cached student's first grade in a subject adds to the class
+        assertTrue(studentService.createGrade(70.0, 2, "science"));
+        studentService.configureStudentInformationModel(2, model);
+        assertEquals(2, ((ClassRank) model.getAttribute("scienceRank")).getOutOf());
+    }
+
+    @Test
+    public void classRankSketchMatchesExactRanks() {
+        Random random = new Random(42);
+        int students = 20_000;
+        List<Object[]> totals = new ArrayList<>();
+        double[] averages = new double[students];
+        for (int i = 0; i < students; i++) {
+            int grades = 1 + random.nextInt(10);
+            double sum = 0;
+            for (int j = 0; j < grades; j++) {
+                sum += Math.max(0, Math.min(100, Math.round(70 + 15 * random.nextGaussian())));
+            }
+            averages[i] = sum / grades;
+            totals.add(new Object[] {1000 + i, "science", grades, sum, 0.0});
+        }
+        jdbc.batchUpdate("INSERT INTO student_grade_total(student_id, subject, grade_count, grade_sum, grade_sum_squares) " +
+                "VALUES(?, ?, ?, ?, ?)", totals);
+        gradeStatistics.invalidate();
+
+        // student 1's 100.0 from the fixtures is ranked too
+        double[] sorted = Arrays.copyOf(averages, students + 1);
+        sorted[students] = 100.0;
+        Arrays.sort(sorted);
+        for (int i = 0; i < students; i += 97) {
+            double average = averages[i];
+            long atOrBelow = Arrays.stream(sorted).filter(value -> value <= average + 1e-9).count();
+            ClassRank rank = gradeStatistics.getClassRank("science", average);
+            assertEquals(students + 1, rank.getOutOf());
+            assertEquals(atOrBelow * 100.0 / sorted.length, rank.getPercentile(), 2.0, "Average " + average);
+        }
+    }
+
+    @Test
+    public void hotQueriesUseIndexes() {
+        // same predicates as the DAO queries, H2 names the index it picks in the plan
+        assertUsesIndex("UK_STUDENT_EMAIL_ADDRESS",
+                "SELECT * FROM student WHERE email_address = 'rick.norman@luv2code.com'");
+        assertUsesIndex("IDX_STUDENT_GRADE_STUDENT_SUBJECT",
+                "SELECT * FROM student_grade WHERE student_id = 1 AND subject = 'math'");
+        assertUsesIndex("IDX_STUDENT_GRADE_STUDENT_SUBJECT",
+                "DELETE FROM student_grade WHERE student_id = 1");
+        assertUsesIndex("UK_STUDENT_GRADE_TOTAL",
+                "SELECT * FROM student_grade_total WHERE student_id = 1");
+        assertUsesIndex("IDX_STUDENT_LASTNAME_ID",
+                "SELECT * FROM student WHERE lastname = 'Norman' AND id > 1");
+    }
+
+    @Test
+    public void duplicateEmailAddressIsRejected() {
+        assertThrows(DataIntegrityViolationException.class,
+                () -> studentService.createStudent("Rick", "Norman", "rick.norman@luv2code.com"));
+    }
+
+    @Test
+    public void migrationsCarrySubjectTablesForward() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:migration;DB_CLOSE_DELAY=-1", "sa", "");
+        JdbcTemplate migrated = new JdbcTemplate(dataSource);
+
+        // a database as ddl-auto left it, with the grades still in one table per subject
+        Flyway.configure().dataSource(dataSource).target("1").load().migrate();
+        migrated.execute("INSERT INTO student(id, firstname, lastname, email_address) " +
+                "VALUES(1, 'Eric', 'Roby', 'eric.roby@luv2code.com')");
+        migrated.execute("INSERT INTO math_grade(id, student_id, grade) VALUES(1, 1, 80.0), (2, 1, 90.0)");
+        migrated.execute("INSERT INTO science_grade(id, student_id, grade) VALUES(1, 1, 70.0)");
+        migrated.execute("INSERT INTO history_grade(id, student_id, grade) VALUES(1, 1, 60.0)");
+
+        Flyway.configure().dataSource(dataSource).load().migrate();
+
+        assertEquals(4, migrated.queryForObject("SELECT COUNT(*) FROM student_grade", Integer.class));
+        assertEquals(2, migrated.queryForObject("SELECT COUNT(*) FROM student_grade WHERE subject = 'math'", Integer.class));
+        assertEquals(170.0, migrated.queryForObject(
+                "SELECT grade_sum FROM student_grade_total WHERE student_id = 1 AND subject = 'math'", Double.class));
+        assertEquals(3, migrated.queryForObject("SELECT COUNT(*) FROM student_grade_total", Integer.class));
+        assertEquals(0, migrated.queryForObject("SELECT COUNT(*) FROM information_schema.tables " +
+                "WHERE table_name IN ('MATH_GRADE', 'SCIENCE_GRADE', 'HISTORY_GRADE')", Integer.class));
+        migrated.execute("DROP ALL OBJECTS");
+    }
+
+    private void assertUsesIndex(String index, String sql) {
+        String plan = jdbc.queryForObject("EXPLAIN " + sql, String.class);
+        assertTrue(plan.toUpperCase().contains(index), "Expected " + index + " in plan: " + plan);
+        assertFalse(plan.contains("tableScan"), "Expected no table scan: " + plan);
+    }
 }
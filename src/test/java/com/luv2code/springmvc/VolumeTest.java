@@ -0,0 +1,338 @@
+package com.luv2code.springmvc;
+
+import com.luv2code.springmvc.models.ImportResult;
+import com.luv2code.springmvc.models.SubjectStatistics;
+import com.luv2code.springmvc.repository.MathGradeDao;
+import com.luv2code.springmvc.service.GradeAverageCache;
+import com.luv2code.springmvc.service.GradeImportService;
+import com.luv2code.springmvc.service.GradeStatisticsService;
+import com.luv2code.springmvc.service.GradebookExportService;
+import com.luv2code.springmvc.service.StudentAndGradeService;
+import com.luv2code.springmvc.service.StudentImportService;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+
+import javax.persistence.EntityManagerFactory;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Volume checks, left out of the regular build: mvn test -Pvolume, which also fixes the heap at
+ * -Xmx1g. They run against a file based H2, so the rows do not share the heap with the code under
+ * test, and every figure they measure is asserted, the assertion message carries it.
+ */
+@Tag("volume")
+@TestPropertySource(value = "/application-test.properties", properties = {
+        "spring.datasource.url=jdbc:h2:file:./target/volume/gradebook-${random.uuid}",
+        "spring.jpa.show-sql=false"})
+@SpringBootTest
+public class VolumeTest {
+
+    @Autowired
+    private StudentAndGradeService studentService;
+
+    @Autowired
+    private MathGradeDao mathGradeDao;
+
+    @Autowired
+    private GradeAverageCache gradeAverageCache;
+
+    @Autowired
+    private GradeStatisticsService gradeStatistics;
+
+    @Autowired
+    private GradeImportService gradeImportService;
+
+    @Autowired
+    private StudentImportService studentImportService;
+
+    @Autowired
+    private GradebookExportService exportService;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @BeforeEach
+    public void setupDatabase() {
+        gradeAverageCache.clear();
+        jdbc.execute("INSERT INTO student(id, firstname, lastname, email_address) " +
+                "VALUES(1, 'Rick', 'Norman', 'rick.norman@luv2code.com')");
+    }
+
+    @Test
+    public void createGradeThroughputUnderConcurrency() throws Exception {
+        int insertsPerThread = 200;
+
+        for (int threads : new int[] {1, 8, 64}) {
+            jdbc.execute("DELETE FROM student_grade");
+            jdbc.execute("DELETE FROM student_grade_total");
+
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            long start = System.nanoTime();
+            try {
+                List<Future<?>> futures = new ArrayList<>();
+                for (int t = 0; t < threads; t++) {
+                    futures.add(executor.submit(() -> {
+                        for (int i = 0; i < insertsPerThread; i++) {
+                            assertTrue(studentService.createGrade(75.0, 1, "math"));
+                        }
+                        return null;
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } finally {
+                executor.shutdown();
+                assertTrue(executor.awaitTermination(5, TimeUnit.MINUTES));
+            }
+            double insertsPerSecond = threads * insertsPerThread / ((System.nanoTime() - start) / 1e9);
+
+            Set<Integer> ids = new HashSet<>();
+            mathGradeDao.findGradeByStudentId(1).forEach(grade -> ids.add(grade.getId()));
+            assertEquals(threads * insertsPerThread, ids.size(), "Every concurrent insert gets its own row");
+            assertTrue(insertsPerSecond > 500,
+                    String.format("createGrade: %d threads, %.0f inserts/s", threads, insertsPerSecond));
+        }
+    }
+
+    // nothing is loaded to be deleted, so memory does not depend on how many students go
+    @Test
+    public void deleteStudentsVolume() throws Exception {
+        int students = 10_000;
+        jdbc.execute("INSERT INTO student(id, firstname, lastname, email_address) " +
+                "SELECT X, 'First' || X, 'Last' || X, 'student' || X || '@luv2code.com' FROM SYSTEM_RANGE(1001, " + (1000 + students) + ")");
+        jdbc.execute("INSERT INTO student_grade(subject, student_id, grade) " +
+                "SELECT CASE MOD(X, 3) WHEN 0 THEN 'math' WHEN 1 THEN 'science' ELSE 'history' END, 1001 + MOD(X, " + students + "), 80.0 " +
+                "FROM SYSTEM_RANGE(0, " + (3 * students - 1) + ")");
+        List<Integer> ids = new ArrayList<>();
+        for (int id = 1001; id <= 1000 + students; id++) {
+            ids.add(id);
+        }
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        RetainedHeap heap = new RetainedHeap();
+        long start = System.nanoTime();
+
+        // deleted on another thread, this one samples the heap until it is done
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Integer> deleted = executor.submit(() -> studentService.deleteStudents(ids));
+            while (!deleted.isDone()) {
+                heap.sample();
+                Thread.sleep(50);
+            }
+            assertEquals(students, deleted.get());
+        } finally {
+            executor.shutdown();
+        }
+        heap.sample();
+
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        assertEquals(3 * students / 1000, statistics.getPrepareStatementCount(), "Three bulk deletes per 1000 students");
+        assertEquals(0, statistics.getEntityLoadCount(), "Nothing is loaded to be deleted");
+        assertEquals(1, jdbc.queryForObject("SELECT COUNT(*) FROM student", Integer.class));
+        assertEquals(0, jdbc.queryForObject("SELECT COUNT(*) FROM student_grade", Integer.class));
+        String figures = "deleteStudents: " + students + " students in " + elapsedMillis + " ms, "
+                + heap.getPeakMegabytes() + " MB retained at most";
+        assertTrue(heap.getPeakMegabytes() < 32, figures);
+        assertTrue(elapsedMillis < 10_000, figures);
+    }
+
+    // Ten million grades: once the histograms are loaded the statistics come from them in well under
+    // a second, that is the target. The first load after an invalidate scans every grade and is not
+    // held to it, it only gets a loose bound
+    @Test
+    public void gradeStatisticsVolume() {
+        long grades = 10_000_000;
+        jdbc.execute("INSERT INTO student_grade(subject, student_id, grade) " +
+                "SELECT CASE MOD(X, 3) WHEN 0 THEN 'math' WHEN 1 THEN 'science' ELSE 'history' END, 1, MOD(X, 101) " +
+                "FROM SYSTEM_RANGE(1, " + grades + ")");
+        gradeStatistics.invalidate();
+
+        long start = System.nanoTime();
+        Map<String, SubjectStatistics> loaded = gradeStatistics.getStatistics();
+        long loadMillis = (System.nanoTime() - start) / 1_000_000;
+        assertEquals(grades, loaded.values().stream().mapToLong(SubjectStatistics::getCount).sum());
+        assertTrue(loadMillis < 30_000, "First load of " + grades + " grades, a full scan: " + loadMillis + " ms");
+
+        assertTrue(studentService.createGrade(50.0, 1, "math"));
+        start = System.nanoTime();
+        Map<String, SubjectStatistics> updated = gradeStatistics.getStatistics();
+        long updatedMicros = (System.nanoTime() - start) / 1_000;
+        assertEquals(grades + 1, updated.values().stream().mapToLong(SubjectStatistics::getCount).sum());
+        assertTrue(updatedMicros < 1_000_000, "Statistics of " + (grades + 1) + " grades after a write: "
+                + updatedMicros + " us");
+    }
+
+    // the export streams, what it keeps must not grow with the roster. A buffered one would hold all
+    // 1M students, more than the volume profile's -Xmx1g leaves it
+    @Test
+    public void exportGradebookVolume() throws IOException {
+        int students = 1_000_000;
+        int grades = 3_000_000;
+        jdbc.execute("INSERT INTO student(id, firstname, lastname, email_address) " +
+                "SELECT X, 'First' || X, 'Last' || X, 'student' || X || '@luv2code.com' FROM SYSTEM_RANGE(1001, " + (1000 + students) + ")");
+        jdbc.execute("INSERT INTO student_grade(subject, student_id, grade) " +
+                "SELECT CASE MOD(X, 3) WHEN 0 THEN 'math' WHEN 1 THEN 'science' ELSE 'history' END, " +
+                "1001 + MOD(X, " + students + "), MOD(X, 101) FROM SYSTEM_RANGE(0, " + (grades - 1) + ")");
+
+        RetainedHeap heap = new RetainedHeap();
+        long[] lines = new long[1];
+        long[] bytes = new long[1];
+        // counts what is written, sampling the heap every tenth of the students
+        OutputStream counting = new OutputStream() {
+            @Override
+            public void write(int b) {
+                bytes[0]++;
+                if (b == '\n' && ++lines[0] % (students / 10) == 0)
+                    heap.sample();
+            }
+
+            @Override
+            public void write(byte[] buffer, int offset, int length) {
+                for (int i = offset; i < offset + length; i++) {
+                    write(buffer[i]);
+                }
+            }
+        };
+        long start = System.nanoTime();
+
+        assertEquals(students + 1, exportService.export(GradebookExportService.Format.CSV, counting));
+
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        assertEquals(students + 2, lines[0], "Header and one line per student");
+        String figures = "exportGradebook: " + (students + 1) + " students, " + grades + " grades, "
+                + bytes[0] / (1024 * 1024) + " MB in " + elapsedMillis + " ms, "
+                + heap.getPeakMegabytes() + " MB retained at most";
+        assertTrue(heap.getPeakMegabytes() < 64, figures);
+        assertTrue(elapsedMillis < 180_000, figures);
+    }
+
+    // 100k grades in seconds, not minutes
+    @Test
+    public void importGradesCsvVolume() throws IOException {
+        int rows = 100_000;
+        String[] types = {"math", "science", "history"};
+
+        ImportResult result = gradeImportService.importCsv(
+                generatedLines(rows, i -> "1," + types[i % 3] + "," + (i % 101)));
+
+        assertEquals(rows, result.getImported());
+        assertTrue(result.getErrors().isEmpty());
+        assertEquals(rows, jdbc.queryForObject("SELECT SUM(grade_count) FROM student_grade_total", Long.class));
+        assertTrue(result.getElapsedMillis() < 10_000, "importCsv: " + rows + " grades in "
+                + result.getElapsedMillis() + " ms, " + result.getRowsPerSecond() + " rows/s");
+    }
+
+    // the import streams, so what it keeps must not grow with the file
+    @Test
+    public void importStudentsCsvVolume() throws IOException {
+        int rows = 1_000_000;
+        RetainedHeap heap = new RetainedHeap();
+
+        // every tenth row repeats the email of the row before it
+        ImportResult result = studentImportService.importCsv(generatedLines(rows,
+                i -> "First" + i + ",Last" + i + ",student" + (i % 10 == 9 ? i - 1 : i) + "@import.luv2code.com", heap));
+
+        assertEquals(rows - rows / 10, result.getImported());
+        assertEquals(rows / 10, result.getSkipped());
+        String figures = "importStudents: " + rows + " rows, " + result.getRowsPerSecond() + " rows/s, "
+                + heap.getPeakMegabytes() + " MB retained at most";
+        assertTrue(heap.getPeakMegabytes() < 64, figures);
+        assertTrue(result.getRowsPerSecond() > 10_000, figures);
+    }
+
+    private static Reader generatedLines(int rows, IntFunction<String> line) {
+        return generatedLines(rows, line, null);
+    }
+
+    /**
+     * Produces the lines lazily, so the input never sits in the heap. The heap, when given, is
+     * sampled every tenth of the rows.
+     */
+    private static Reader generatedLines(int rows, IntFunction<String> line, RetainedHeap heap) {
+        return new Reader() {
+            private int next = 0;
+            private String current = "";
+            private int position = 0;
+
+            @Override
+            public int read(char[] buffer, int offset, int length) {
+                if (position == current.length()) {
+                    if (next == rows)
+                        return -1;
+                    if (heap != null && next % Math.max(1, rows / 10) == 0)
+                        heap.sample();
+                    current = line.apply(next++) + "\n";
+                    position = 0;
+                }
+                int count = Math.min(length, current.length() - position);
+                current.getChars(position, position + count, buffer, offset);
+                position += count;
+                return count;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    /**
+     * Heap still in use after a full collection, relative to when it was created. Garbage does
+     * not count, only what the code under test holds on to at the sampled points.
+     */
+    private static class RetainedHeap {
+
+        private final long baseline = collect();
+
+        private long peak;
+
+        void sample() {
+            peak = Math.max(peak, collect() - baseline);
+        }
+
+        long getPeakMegabytes() {
+            return peak / (1024 * 1024);
+        }
+
+        private static long collect() {
+            System.gc();
+            return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        }
+    }
+
+    @AfterEach
+    public void cleanupDatabase() {
+        jdbc.execute("DELETE FROM student_grade");
+        jdbc.execute("DELETE FROM student_grade_total");
+        jdbc.execute("DELETE FROM student");
+    }
+}
@@ -0,0 +1,90 @@
+package com.luv2code.springmvc.benchmark;
+
+import com.luv2code.springmvc.models.Grade;
+import com.luv2code.springmvc.models.GradeBuffer;
+import com.luv2code.springmvc.models.MathGrade;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Grade average over a List of boxed grades with BigDecimal rounding, as StudentGrades used to do
+ * it, against the primitive GradeBuffer. Running main adds the gc profiler and fails when the
+ * buffer path allocates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GradeAverageBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    private int grades;
+
+    private List<Grade> gradeList;
+
+    private GradeBuffer gradeBuffer;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        gradeList = new ArrayList<>(grades);
+        gradeBuffer = new GradeBuffer(grades);
+        for (int i = 0; i < grades; i++) {
+            double grade = Math.round(random.nextDouble() * 10000) / 100.0;
+            gradeList.add(new MathGrade(grade));
+            gradeBuffer.add(grade);
+        }
+    }
+
+    @Benchmark
+    public double listAverage() {
+        double sum = 0;
+        for (Grade grade : gradeList) {
+            sum += grade.getGrade();
+        }
+        BigDecimal resultRound = BigDecimal.valueOf(sum / gradeList.size());
+        return resultRound.setScale(2, RoundingMode.HALF_UP).doubleValue();
+    }
+
+    @Benchmark
+    public double bufferAverage() {
+        return gradeBuffer.average();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(GradeAverageBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        Collection<RunResult> results = new Runner(options).run();
+
+        for (RunResult result : results) {
+            if (!result.getParams().getBenchmark().endsWith("bufferAverage"))
+                continue;
+            for (Map.Entry<String, Result> secondary : result.getSecondaryResults().entrySet()) {
+                // escape analysis may leave a few bytes of noise, anything more is a real allocation
+                if (secondary.getKey().endsWith("gc.alloc.rate.norm") && secondary.getValue().getScore() > 1.0) {
+                    throw new IllegalStateException("bufferAverage allocates " + secondary.getValue().getScore()
+                            + " bytes/op with " + result.getParams().getParam("grades") + " grades");
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.luv2code.springmvc.benchmark;
+
+import com.luv2code.springmvc.MvcTestingExampleApplication;
+import com.luv2code.springmvc.models.CollegeStudent;
+import com.luv2code.springmvc.models.GradebookCollegeStudent;
+import com.luv2code.springmvc.service.GradeImportService;
+import com.luv2code.springmvc.service.StudentAndGradeService;
+import com.luv2code.springmvc.service.StudentImportService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockServletContext;
+import org.springframework.ui.ExtendedModelMap;
+import org.thymeleaf.context.WebContext;
+import org.thymeleaf.spring5.SpringTemplateEngine;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service and template hot paths against an embedded H2 seeded with a roster of the given size.
+ * Sizes can be changed on the command line, e.g. -p students=100000 -p gradesPerStudent=50.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GradebookBenchmark {
+
+    private static final String[] GRADE_TYPES = {"math", "science", "history"};
+
+    // deletes per deleteGrade iteration
+    private static final int DELETE_BATCH = 5000;
+
+    @Param({"1000"})
+    private int students;
+
+    @Param({"10"})
+    private int gradesPerStudent;
+
+    private ConfigurableApplicationContext context;
+
+    private StudentAndGradeService studentService;
+
+    private SpringTemplateEngine templateEngine;
+
+    private JdbcTemplate jdbc;
+
+    @Setup
+    public void setup() throws IOException {
+        context = new SpringApplicationBuilder(MvcTestingExampleApplication.class)
+                .web(WebApplicationType.NONE)
+                // command line arguments, so they win over application.properties
+                .run("--spring.datasource.url=jdbc:h2:mem:benchmark",
+                        "--spring.datasource.driverClassName=org.h2.Driver",
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=",
+                        "--spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+                        "--spring.jpa.hibernate.ddl-auto=validate",
+                        "--spring.jpa.show-sql=false",
+                        "--logging.level.root=WARN");
+        studentService = context.getBean(StudentAndGradeService.class);
+        templateEngine = context.getBean(SpringTemplateEngine.class);
+        jdbc = context.getBean(JdbcTemplate.class);
+
+        StringBuilder roster = new StringBuilder();
+        for (int i = 0; i < students; i++) {
+            roster.append("First").append(i).append(",Last").append(i).append(",student").append(i)
+                    .append("@luv2code.com\n");
+        }
+        context.getBean(StudentImportService.class).importCsv(new StringReader(roster.toString()));
+
+        StringBuilder grades = new StringBuilder();
+        for (int studentId = 1; studentId <= students; studentId++) {
+            for (int i = 0; i < gradesPerStudent; i++) {
+                grades.append(studentId).append(',').append(GRADE_TYPES[i % 3]).append(',')
+                        .append(ThreadLocalRandom.current().nextInt(101)).append('\n');
+            }
+        }
+        context.getBean(GradeImportService.class).importCsv(new StringReader(grades.toString()));
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    private int randomStudentId() {
+        return ThreadLocalRandom.current().nextInt(students) + 1;
+    }
+
+    @Benchmark
+    public boolean createGrade() {
+        return studentService.createGrade(75.0, randomStudentId(), "math");
+    }
+
+    /**
+     * Grades for deleteGrade, written through the service so their totals are there to decrement.
+     * Each iteration deletes exactly one batch of them, hence single shot time: the score is the
+     * time for the whole batch, divide it by DELETE_BATCH for a single delete.
+     */
+    @State(Scope.Thread)
+    public static class GradesToDelete {
+
+        // a grade no other benchmark writes, roster grades are whole numbers
+        private static final double GRADE = 42.5;
+
+        private int[] ids;
+
+        private int next;
+
+        @Setup(Level.Iteration)
+        public void createGrades(GradebookBenchmark benchmark) {
+            for (int i = 0; i < DELETE_BATCH; i++) {
+                benchmark.studentService.createGrade(GRADE, benchmark.randomStudentId(), "math");
+            }
+            ids = benchmark.jdbc.queryForList("SELECT id FROM student_grade WHERE subject = 'math' AND grade = ? ORDER BY id",
+                    Integer.class, GRADE).stream().mapToInt(Integer::intValue).toArray();
+            next = 0;
+        }
+
+        private int next() {
+            return ids[next++];
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3, batchSize = DELETE_BATCH)
+    @Measurement(iterations = 5, batchSize = DELETE_BATCH)
+    public int deleteGrade(GradesToDelete grades) {
+        return studentService.deleteGrade(grades.next(), "math");
+    }
+
+    @Benchmark
+    public GradebookCollegeStudent studentInformation() {
+        return studentService.studentInformation(randomStudentId());
+    }
+
+    @Benchmark
+    public ExtendedModelMap configureStudentInformationModel() {
+        ExtendedModelMap model = new ExtendedModelMap();
+        studentService.configureStudentInformationModel(randomStudentId(), model);
+        return model;
+    }
+
+    @Benchmark
+    public int getGradebook() {
+        int count = 0;
+        for (CollegeStudent ignored : studentService.getGradebook()) {
+            count++;
+        }
+        return count;
+    }
+
+    @Benchmark
+    public List<CollegeStudent> getGradebookPage() {
+        return studentService.getGradebookPage(randomStudentId(), "", "id", 50);
+    }
+
+    @Benchmark
+    public String renderIndex() {
+        List<CollegeStudent> page = studentService.getGradebookPage(0, "", "id", 50);
+        return templateEngine.process("index", webContext(Map.of("students", page, "sort", "id", "size", 50)));
+    }
+
+    @Benchmark
+    public String renderStudentInformation() {
+        ExtendedModelMap model = new ExtendedModelMap();
+        studentService.configureStudentInformationModel(randomStudentId(), model);
+        return templateEngine.process("studentInformation", webContext(model));
+    }
+
+    private WebContext webContext(Map<String, Object> variables) {
+        // link expressions such as @{/cssandjs/main.css} need a web context
+        return new WebContext(new MockHttpServletRequest(), new MockHttpServletResponse(), new MockServletContext(),
+                Locale.US, variables);
+    }
+}
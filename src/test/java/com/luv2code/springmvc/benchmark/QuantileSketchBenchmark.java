@@ -0,0 +1,76 @@
+package com.luv2code.springmvc.benchmark;
+
+import com.luv2code.springmvc.models.QuantileSketch;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of keeping class ranks with a QuantileSketch of the student averages: adding an average,
+ * estimating a rank, and merging two sketches, against re-sorting every average for exact ranks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QuantileSketchBenchmark {
+
+    @Param({"10000", "1000000"})
+    private int students;
+
+    private double[] averages;
+
+    private QuantileSketch sketch;
+
+    private QuantileSketch other;
+
+    private int next;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        averages = new double[students];
+        sketch = new QuantileSketch();
+        other = new QuantileSketch(QuantileSketch.DEFAULT_K, 7);
+        for (int i = 0; i < students; i++) {
+            averages[i] = Math.max(0, Math.min(100, 70 + 15 * random.nextGaussian()));
+            sketch.update(averages[i]);
+            other.update(averages[i]);
+        }
+    }
+
+    private double nextAverage() {
+        next = next + 1 == students ? 0 : next + 1;
+        return averages[next];
+    }
+
+    @Benchmark
+    public QuantileSketch update() {
+        sketch.update(nextAverage());
+        return sketch;
+    }
+
+    @Benchmark
+    public long rank() {
+        return sketch.rank(nextAverage());
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public QuantileSketch merge() {
+        QuantileSketch merged = new QuantileSketch();
+        return merged.merge(sketch).merge(other);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public double[] exactRefresh() {
+        double[] sorted = averages.clone();
+        Arrays.sort(sorted);
+        return sorted;
+    }
+}
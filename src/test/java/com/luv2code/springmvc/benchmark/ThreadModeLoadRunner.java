@@ -0,0 +1,149 @@
+package com.luv2code.springmvc.benchmark;
+
+import com.luv2code.springmvc.MvcTestingExampleApplication;
+import com.luv2code.springmvc.config.VirtualThreadConfiguration;
+import com.luv2code.springmvc.service.StudentImportService;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Load test for gradebook.threads.mode, not part of the unit test run. Starts the app once with
+ * tomcat's platform thread pool and once with virtual threads, drives both with the same number of
+ * concurrent clients and prints throughput and p99 for each. Both runs get the same small tomcat
+ * pool and database permits, so the difference is in how waiting requests are parked.
+ * <p>
+ * mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.luv2code.springmvc.benchmark.ThreadModeLoadRunner -Dexec.args="200 20000"
+ * <p>
+ * The first two arguments are the client count and the request count, anything after them is
+ * passed to both applications, e.g. --spring.datasource.url=... to run against MySQL instead of H2.
+ */
+public class ThreadModeLoadRunner {
+
+    private static final int STUDENTS = 1000;
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int requests = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+        String[] extraArgs = args.length > 2 ? Arrays.copyOfRange(args, 2, args.length) : new String[0];
+
+        Result platform = run("platform", clients, requests, extraArgs);
+        System.out.println(platform);
+        if (VirtualThreadConfiguration.newVirtualThreadPerTaskExecutor() == null) {
+            System.out.println("virtual: skipped, needs a Java 21+ runtime");
+            return;
+        }
+        Result virtual = run("virtual", clients, requests, extraArgs);
+        System.out.println(virtual);
+        System.out.printf("virtual/platform: throughput %.2fx, p99 %.2fx%n",
+                virtual.throughput / platform.throughput, virtual.p99Millis / platform.p99Millis);
+        if (platform.errors > 0 || virtual.errors > 0)
+            System.exit(1);
+    }
+
+    private static Result run(String mode, int clients, int requests, String[] extraArgs) throws Exception {
+        List<String> appArgs = new ArrayList<>(List.of(
+                "--server.port=0",
+                "--spring.datasource.url=jdbc:h2:mem:load-" + mode,
+                "--spring.datasource.driverClassName=org.h2.Driver",
+                "--spring.datasource.username=sa",
+                "--spring.datasource.password=",
+                "--spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+                "--spring.jpa.show-sql=false",
+                "--spring.datasource.hikari.maximum-pool-size=10",
+                "--gradebook.datasource.max-concurrency=10",
+                "--server.tomcat.threads.max=20",
+                "--gradebook.threads.mode=" + mode,
+                "--logging.level.root=WARN"));
+        appArgs.addAll(Arrays.asList(extraArgs));
+
+        try (ServletWebServerApplicationContext context = (ServletWebServerApplicationContext)
+                new SpringApplicationBuilder(MvcTestingExampleApplication.class).run(appArgs.toArray(new String[0]))) {
+            seed(context);
+            String baseUrl = "http://localhost:" + context.getWebServer().getPort() + "/api/students/";
+            HttpClient client = HttpClient.newBuilder().executor(Executors.newFixedThreadPool(clients)).build();
+
+            // warm up the handlers and the JIT before anything is measured
+            drive(client, baseUrl, clients, requests / 10, new long[requests / 10], new AtomicInteger());
+
+            long[] latencies = new long[requests];
+            AtomicInteger errors = new AtomicInteger();
+            long start = System.nanoTime();
+            drive(client, baseUrl, clients, requests, latencies, errors);
+            long elapsed = System.nanoTime() - start;
+
+            Arrays.sort(latencies);
+            return new Result(mode, requests * 1e9 / elapsed,
+                    latencies[(int) Math.ceil(requests * 0.99) - 1] / 1e6, errors.get());
+        }
+    }
+
+    private static void seed(ServletWebServerApplicationContext context) throws IOException {
+        StringBuilder roster = new StringBuilder();
+        for (int i = 0; i < STUDENTS; i++) {
+            roster.append("First").append(i).append(",Last").append(i).append(",student").append(i)
+                    .append("@luv2code.com\n");
+        }
+        context.getBean(StudentImportService.class).importCsv(new StringReader(roster.toString()));
+    }
+
+    private static void drive(HttpClient client, String baseUrl, int clients, int requests,
+                              long[] latencies, AtomicInteger errors) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        AtomicInteger next = new AtomicInteger();
+        for (int i = 0; i < clients; i++) {
+            pool.execute(() -> {
+                int n;
+                while ((n = next.getAndIncrement()) < requests) {
+                    HttpRequest request = HttpRequest.newBuilder(
+                            URI.create(baseUrl + (ThreadLocalRandom.current().nextInt(STUDENTS) + 1))).build();
+                    long start = System.nanoTime();
+                    try {
+                        if (client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() != 200)
+                            errors.incrementAndGet();
+                    } catch (IOException | InterruptedException e) {
+                        errors.incrementAndGet();
+                    }
+                    latencies[n] = System.nanoTime() - start;
+                }
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(10, TimeUnit.MINUTES);
+    }
+
+    private static class Result {
+
+        private final String mode;
+        private final double throughput;
+        private final double p99Millis;
+        private final int errors;
+
+        private Result(String mode, double throughput, double p99Millis, int errors) {
+            this.mode = mode;
+            this.throughput = throughput;
+            this.p99Millis = p99Millis;
+            this.errors = errors;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %.0f requests/s, p99 %.2f ms, %d errors", mode, throughput, p99Millis, errors);
+        }
+    }
+}